@@ -1,5 +1,4 @@
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.PriorityQueue;
@@ -22,6 +21,12 @@ public class Robot {
 	private int pathLength;
 	private Iterator<Action> pathIterator;
 
+	// Successor offsets in the order they are tried: up, left, right, down.
+	// The searches number cells row * cols + col and keep their open, closed
+	// and parent data in arrays and BitSets indexed that way.
+	private static final int[] ROW_STEPS = { -1, 0, 0, 1 };
+	private static final int[] COL_STEPS = { 0, -1, 1, 0 };
+
 	/**
 	 * Initializes a Robot on a specific tile in the environment.
 	 */
@@ -99,72 +104,63 @@ public class Robot {
 	 */
 	public void bfs() {
 		LinkedList<Position> targets = env.getTargets();
-		LinkedList<Position> open = new LinkedList<>();
-		open.add(new Position(posRow, posCol));
-		openCount++;
-
-		LinkedList<Position> closed = new LinkedList<Position>();
-
-		HashMap<Position, Position> previous = new HashMap<>();
+		int cols = env.getCols();
+		int cells = env.getRows() * cols;
+		int[] queue = new int[cells];
+		int[] previous = new int[cells];
+		BitSet seen = new BitSet(cells);
+		LinkedList<Action> route = new LinkedList<>();
 
-		Position pos = null;
+		int start = posRow * cols + posCol;
+		openCount++;
 		Position target = findNextTarget(posRow, posCol, targets);
 
 		while (target != null) {
-
-			while (!open.isEmpty()) {
-
-				pos = open.pop();
-				closed.add(pos);
-
-				if (pos.row == target.row && pos.col == target.col) {
-					closed.clear();
-					open.clear();
-					open.add(pos);
-					break;
-				}
+			int goal = target.row * cols + target.col;
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = start;
+			seen.clear();
+			seen.set(start);
+
+			while (head < tail && queue[head] != goal) {
+				int pos = queue[head++];
+				int row = pos / cols;
+				int col = pos % cols;
 
 				// check the 4 possible successors
-				int[] iVals = { -1, 0, 0, 1 };
-				int[] jVals = { 0, -1, 1, 0 };
 				for (int k = 0; k < 4; k++) {
-					int i = pos.row + iVals[k];
-					int j = pos.col + jVals[k];
-
-					if (!containsPos(i, j, open) && !containsPos(i, j, closed)
-							&& (env.getTileStatus(i, j) != TileStatus.IMPASSABLE)) {
-						Position successor = new Position(i, j);
-						open.add(successor);
-						previous.put(successor, pos);
+					int i = row + ROW_STEPS[k];
+					int j = col + COL_STEPS[k];
+					if (env.getTileStatus(i, j) == TileStatus.IMPASSABLE) {
+						continue;
+					}
+					int successor = i * cols + j;
+					if (!seen.get(successor)) {
+						seen.set(successor);
+						previous[successor] = pos;
+						queue[tail++] = successor;
 						openCount++;
 					}
 				}
-
 			}
 
-			if (open.isEmpty()) {
+			if (head == tail) {
 				return;
 			}
 
+			addPath(route, start, goal, previous);
 			targets.remove(target);
-			target = findNextTarget(pos.row, pos.col, targets);
+			start = goal;
+			target = findNextTarget(target.row, target.col, targets);
 		}
-		path = buildPath(pos, previous);
+		path = route;
 
 		pathFound = true;
 		pathLength = path.size();
 		pathIterator = path.iterator();
 	}
 
-	private boolean containsPos(int row, int col, LinkedList<Position> list) {
-
-		for (Position p : list) {
-			if (p.col == col && p.row == row)
-				return true;
-		}
-		return false;
-	}
-
 	/**
 	 * This method implements A* search for maps 0-5. It populates the path
 	 * LinkedList and sets pathFound to true, if a path has been found.
@@ -176,67 +172,18 @@ public class Robot {
 		LinkedList<Position> targets = env.getTargets();
 		Position target = targets.get(0); // TODO Change
 
-		State current = new State(posRow, posCol, h1(posRow, posCol, target), 0);
-		PriorityQueue<State> open = new PriorityQueue<>();
-		HashMap<State, State> previous = new HashMap<>();
+		int cols = env.getCols();
+		int cells = env.getRows() * cols;
+		int[] previous = new int[cells];
+		LinkedList<Action> route = new LinkedList<>();
 
-		open.add(current);
+		int start = posRow * cols + posCol;
 		openCount++;
-
-		LinkedList<State> closed = new LinkedList<State>();
-
-		while (!open.isEmpty()) {
-			System.out.println("loop");
-
-			current = open.poll();
-			closed.add(current);
-
-			if (current.row == target.row && current.col == target.col) {
-				// toRemove.add(target);
-				closed.clear();
-				open.clear();
-				open.add(current);
-				break;
-			}
-
-			// check the 4 possible successors
-			int[] iVals = { -1, 0, 0, 1 };
-			int[] jVals = { 0, -1, 1, 0 };
-			for (int k = 0; k < 4; k++) {
-				int i = current.row + iVals[k];
-				int j = current.col + jVals[k];
-
-				State successor;
-
-				if (containsPos(i, j, open)) {
-					for (State p : open) {
-						if (p.row == i && p.row == j) {
-							successor = p;
-							if (successor.gScore < current.gScore) {
-								current.gScore = successor.gScore;
-								current.fScore = current.gScore + h1(i, j, target);
-								previous.put(successor, current);
-							}
-						}
-					}
-				} else if ((env.getTileStatus(i, j) != TileStatus.IMPASSABLE) && !containsPos(i, j, closed)) {
-					int gScore = current.gScore + 1;
-					int fScore = gScore + h1(i, j, target);
-					successor = new State(i, j, fScore, gScore);
-					open.add(successor);
-					openCount++;
-					previous.put(successor, current);
-					System.out.println("added");
-				}
-
-			}
-
-		}
-		if (open.isEmpty()) {
+		if (!astar(start, target, previous, new int[cells], new BitSet(cells), new BitSet(cells))) {
 			return;
 		}
-
-		path = buildPath(current, previous);
+		addPath(route, start, target.row * cols + target.col, previous);
+		path = route;
 
 		pathFound = true;
 		pathLength = path.size();
@@ -258,14 +205,6 @@ public class Robot {
 			this.gScore = gScore;
 		}
 
-		public boolean equals(State other) {
-			return row == other.row && col == other.col;
-		}
-
-		public boolean equals(Position other) {
-			return row == other.row && col == other.col;
-		}
-
 		@Override
 		public int compareTo(State other) {
 			return (this.fScore - other.fScore);
@@ -277,11 +216,54 @@ public class Robot {
 		return Math.abs(row - target.row) + Math.abs(col - target.col);
 	}
 
-	private boolean containsPos(int row, int col, Iterable<State> T) {
+	/**
+	 * A* from cell start (numbered row * cols + col) to target. Fills previous
+	 * along the way and returns whether target was reached. gScore, closed and
+	 * opened are scratch space of one entry per cell; their contents on entry
+	 * do not matter. A cell is pushed again when a shorter way to it turns up,
+	 * the stale entry is skipped when it comes off the queue.
+	 */
+	private boolean astar(int start, Position target, int[] previous, int[] gScore, BitSet closed,
+			BitSet opened) {
+		int cols = env.getCols();
+		int goal = target.row * cols + target.col;
+		closed.clear();
+		opened.clear();
+		PriorityQueue<State> open = new PriorityQueue<>();
+		int startRow = start / cols;
+		int startCol = start % cols;
+		open.add(new State(startRow, startCol, h1(startRow, startCol, target), 0));
+		opened.set(start);
+		gScore[start] = 0;
 
-		for (State p : T) {
-			if (p.col == col && p.row == row)
+		while (!open.isEmpty()) {
+			State current = open.poll();
+			int pos = current.row * cols + current.col;
+			if (closed.get(pos)) {
+				continue;
+			}
+			if (pos == goal) {
 				return true;
+			}
+			closed.set(pos);
+
+			// check the 4 possible successors
+			for (int k = 0; k < 4; k++) {
+				int i = current.row + ROW_STEPS[k];
+				int j = current.col + COL_STEPS[k];
+				if (env.getTileStatus(i, j) == TileStatus.IMPASSABLE) {
+					continue;
+				}
+				int successor = i * cols + j;
+				int g = current.gScore + 1;
+				if (!closed.get(successor) && (!opened.get(successor) || g < gScore[successor])) {
+					opened.set(successor);
+					gScore[successor] = g;
+					previous[successor] = pos;
+					open.add(new State(i, j, g + h1(i, j, target), g));
+					openCount++;
+				}
+			}
 		}
 		return false;
 	}
@@ -316,70 +298,30 @@ public class Robot {
 		LinkedList<Position> targets = env.getTargets();
 		Position target = findNextTarget(posRow, posCol, targets);
 
-		State current = new State(posRow, posCol, h1(posRow, posCol, target), 0);
-		PriorityQueue<State> open = new PriorityQueue<>();
-		HashMap<State, State> previous = new HashMap<>();
+		int cols = env.getCols();
+		int cells = env.getRows() * cols;
+		int[] previous = new int[cells];
+		int[] gScore = new int[cells];
+		BitSet closed = new BitSet(cells);
+		BitSet opened = new BitSet(cells);
+		LinkedList<Action> route = new LinkedList<>();
 
-		open.add(current);
+		int start = posRow * cols + posCol;
 		openCount++;
 
-		LinkedList<State> closed = new LinkedList<State>();
-
 		while (target != null) {
-			while (!open.isEmpty()) {
-
-				current = open.poll();
-				closed.add(current);
-
-				if (current.row == target.row && current.col == target.col) {
-					// toRemove.add(target);
-					closed.clear();
-					open.clear();
-					open.add(current);
-					break;
-				}
-
-				// check the 4 possible successors
-				int[] iVals = { -1, 0, 0, 1 };
-				int[] jVals = { 0, -1, 1, 0 };
-				for (int k = 0; k < 4; k++) {
-					int i = current.row + iVals[k];
-					int j = current.col + jVals[k];
-
-					State successor;
-
-					if (containsPos(i, j, open)) {
-						for (State p : open) {
-							if (p.row == i && p.row == j) {
-								successor = p;
-								if (successor.gScore < current.gScore) {
-									current.gScore = successor.gScore;
-									current.fScore = current.gScore + h1(i, j, target);
-									previous.put(successor, current);
-								}
-							}
-						}
-					} else if ((env.getTileStatus(i, j) != TileStatus.IMPASSABLE) && !containsPos(i, j, closed)) {
-						int gScore = current.gScore + 1;
-						int fScore = gScore + h1(i, j, target);
-						successor = new State(i, j, fScore, gScore);
-						open.add(successor);
-						openCount++;
-						previous.put(successor, current);
-					}
-
-				}
-
-			}
-			if (open.isEmpty()) {
+			if (!astar(start, target, previous, gScore, closed, opened)) {
 				return;
 			}
+			int goal = target.row * cols + target.col;
+			addPath(route, start, goal, previous);
 
 			targets.remove(target);
-			target = findNextTarget(current.row, current.col, targets);
+			start = goal;
+			target = findNextTarget(target.row, target.col, targets);
 		}
 
-		path = buildPath(current, previous);
+		path = route;
 
 		pathFound = true;
 		pathLength = path.size();
@@ -398,50 +340,29 @@ public class Robot {
 		astar101112();
 	}
 
-	private LinkedList<Action> buildPath(Position pos, HashMap<Position, Position> previous) {
-		LinkedList<Action> route = new LinkedList<>();
-		Position last;
-
-		while (previous.containsKey(pos)) {
-			last = previous.get(pos);
-
-			if (pos.col - last.col > 0) {
-				route.add(Action.MOVE_RIGHT);
-			} else if (pos.col - last.col < 0) {
-				route.add(Action.MOVE_LEFT);
-			} else if (pos.row - last.row > 0) {
-				route.add(Action.MOVE_DOWN);
-			} else {
-				route.add(Action.MOVE_UP);
-			}
-
-			pos = last;
-		}
-		Collections.reverse(route);
-		return route;
-	}
-
-	private LinkedList<Action> buildPath(State pos, HashMap<State, State> previous) {
-		LinkedList<Action> route = new LinkedList<>();
-		State last;
-
-		while (previous.containsKey(pos)) {
-			last = previous.get(pos);
-
-			if (pos.col - last.col > 0) {
-				route.add(Action.MOVE_RIGHT);
-			} else if (pos.col - last.col < 0) {
-				route.add(Action.MOVE_LEFT);
-			} else if (pos.row - last.row > 0) {
-				route.add(Action.MOVE_DOWN);
+	/**
+	 * Appends the moves from cell start to cell goal to route, following
+	 * previous back from goal. Cells are numbered row * cols + col.
+	 */
+	private void addPath(LinkedList<Action> route, int start, int goal, int[] previous) {
+		int cols = env.getCols();
+		LinkedList<Action> leg = new LinkedList<>();
+		for (int pos = goal; pos != start; pos = previous[pos]) {
+			int last = previous[pos];
+			// Compare rows first: with a single column, a step of one cell is
+			// a vertical move
+			int rowStep = pos / cols - last / cols;
+			if (rowStep > 0) {
+				leg.addFirst(Action.MOVE_DOWN);
+			} else if (rowStep < 0) {
+				leg.addFirst(Action.MOVE_UP);
+			} else if (pos % cols - last % cols > 0) {
+				leg.addFirst(Action.MOVE_RIGHT);
 			} else {
-				route.add(Action.MOVE_UP);
+				leg.addFirst(Action.MOVE_LEFT);
 			}
-
-			pos = last;
 		}
-		Collections.reverse(route);
-		return route;
+		route.addAll(leg);
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,125 @@
+package csp;
+
+/**
+ * All variables of the scope take different values. Propagation is weaker
+ * than full generalized arc consistency but cheap: values of fixed
+ * variables are removed from the others, and the constraint fails when
+ * fewer values are left than there are variables. When exactly as many
+ * values are left, every one of them must be used, so a value that fits
+ * only one variable is placed there (a hidden single in Sudoku terms).
+ */
+final class AllDifferent extends Constraint {
+
+	AllDifferent(int... vars) {
+		super(vars);
+	}
+
+	// The variables not known to be fixed are open[0, count), kept as a
+	// sparse set: a variable that gets fixed is swapped behind the others, so
+	// restoring count on backtracking restores the set. Each fixed variable
+	// holds its own value, so count follows from the values of the fixed
+	// variables, which live in a solver reversible.
+	private static final class State {
+		final int[] open;
+		final int fixed;
+
+		State(int[] open, int fixed) {
+			this.open = open;
+			this.fixed = fixed;
+		}
+	}
+
+	@Override
+	protected Object newState(Solver solver) {
+		return new State(scope.clone(), solver.newReversible(0));
+	}
+
+	@Override
+	protected boolean propagate(Solver solver, Object state) {
+		State saved = (State) state;
+		long[] domains = solver.domains;
+		int[] open = saved.open;
+		long fixed = solver.getReversible(saved.fixed);
+		int count = scope.length - Long.bitCount(fixed);
+		// Most calls follow a removal that fixed nothing, so first count the
+		// values without branching, and only go over the variables again when
+		// one holds a fixed value or is fixed itself
+		long once = 0;
+		long twice = 0;
+		long stale = 0;
+		boolean single = false;
+		for (int i = 0; i < count; i++) {
+			long domain = domains[open[i]];
+			stale |= domain & fixed;
+			single |= (domain & (domain - 1)) == 0;
+			twice |= once & domain;
+			once |= domain;
+		}
+		// Remove the fixed values from the open variables, moving those that
+		// become fixed in turn out of the set, and count the rest
+		boolean strip = stale != 0 || single;
+		while (strip) {
+			once = 0;
+			twice = 0;
+			long newlyFixed = 0;
+			for (int i = 0; i < count;) {
+				int var = open[i];
+				long domain = domains[var];
+				if ((domain & fixed) != 0) {
+					if (!solver.restrict(var, ~fixed)) {
+						return false;
+					}
+					domain = domains[var];
+				}
+				if ((domain & (domain - 1)) == 0) {
+					if ((newlyFixed & domain) != 0) {
+						return false;
+					}
+					newlyFixed |= domain;
+					open[i] = open[--count];
+					open[count] = var;
+					continue;
+				}
+				twice |= once & domain;
+				once |= domain;
+				i++;
+			}
+			fixed |= newlyFixed;
+			strip = newlyFixed != 0;
+		}
+		while (true) {
+			int values = Long.bitCount(fixed) + Long.bitCount(once);
+			if (values < scope.length) {
+				return false;
+			}
+			long hidden = once & ~twice;
+			if (values > scope.length || hidden == 0) {
+				solver.setReversible(saved.fixed, fixed);
+				return true;
+			}
+			// Each hidden value has exactly one open variable, which is fixed to
+			// it; a variable with two of them cannot take both. No other open
+			// variable holds a hidden value, so only the rest is counted again.
+			once = 0;
+			twice = 0;
+			for (int i = 0; i < count;) {
+				int var = open[i];
+				long domain = domains[var];
+				long own = domain & hidden;
+				if (own != 0) {
+					if ((own & (own - 1)) != 0 || !solver.restrict(var, own)) {
+						return false;
+					}
+					fixed |= own;
+					open[i] = open[--count];
+					open[count] = var;
+					continue;
+				}
+				twice |= once & domain;
+				once |= domain;
+				i++;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,78 @@
+package csp;
+
+/**
+ * A binary constraint given by a Relation, kept arc consistent with AC-2001:
+ * for every value of each side the last support found on the other side is
+ * remembered, and the search for a new support resumes after it when it is
+ * gone. Supports before the pointer may come back on backtracking, so a
+ * search that reaches the end wraps around once before giving up.
+ */
+final class BinaryConstraint extends Constraint {
+
+	private final int x;
+	private final int y;
+	private final Relation relation;
+
+	BinaryConstraint(int x, int y, Relation relation) {
+		super(x, y);
+		this.x = x;
+		this.y = y;
+		this.relation = relation;
+	}
+
+	// Support pointers for the values of x, then for the values of y
+	@Override
+	protected Object newState(Solver solver) {
+		return new int[128];
+	}
+
+	@Override
+	protected boolean propagate(Solver solver, Object state) {
+		int[] last = (int[]) state;
+		return revise(solver, x, y, last, 0, false) && revise(solver, y, x, last, 64, true);
+	}
+
+	// Removes the values of var without a support in other. Once x has been
+	// revised against y, revising y cannot remove a support of x again, so
+	// one pass per side is enough.
+	private boolean revise(Solver solver, int var, int other, int[] last, int offset, boolean swapped) {
+		long domain = solver.domain(var);
+		long otherDomain = solver.domain(other);
+		long kept = domain;
+		for (long values = domain; values != 0; values &= values - 1) {
+			int value = Long.numberOfTrailingZeros(values);
+			int support = last[offset + value];
+			if ((otherDomain & (1L << support)) != 0 && allows(value, support, swapped)) {
+				continue;
+			}
+			support = findSupport(value, otherDomain, support + 1, swapped);
+			if (support < 0) {
+				support = findSupport(value, otherDomain & (-1L >>> (63 - last[offset + value])), 0, swapped);
+			}
+			if (support < 0) {
+				kept &= ~(1L << value);
+			} else {
+				last[offset + value] = support;
+			}
+		}
+		return solver.restrict(var, kept);
+	}
+
+	private int findSupport(int value, long candidates, int from, boolean swapped) {
+		if (from > 63) {
+			return -1;
+		}
+		for (long rest = candidates & (-1L << from); rest != 0; rest &= rest - 1) {
+			int support = Long.numberOfTrailingZeros(rest);
+			if (allows(value, support, swapped)) {
+				return support;
+			}
+		}
+		return -1;
+	}
+
+	private boolean allows(int value, int support, boolean swapped) {
+		return swapped ? relation.allows(support, value) : relation.allows(value, support);
+	}
+
+}
@@ -0,0 +1,44 @@
+package csp;
+
+/**
+ * A constraint over some variables of a Problem. Subclasses narrow domains
+ * through Solver.restrict until the constraint is consistent with them; the
+ * solver calls propagate again whenever a domain in the scope changes.
+ * 
+ * A constraint object is shared by every Solver of its Problem, possibly on
+ * several threads, so it must not keep search state in fields. State that
+ * lives for one search, like the support pointers of AC-2001, is created
+ * per solver by newState and handed back to propagate. State that has to
+ * follow the search up and down can be kept in Solver reversibles.
+ */
+public abstract class Constraint {
+
+	final int[] scope;
+
+	protected Constraint(int... scope) {
+		this.scope = scope.clone();
+	}
+
+	/**
+	 * Variables this constraint watches.
+	 */
+	public final int[] scope() {
+		return scope.clone();
+	}
+
+	/**
+	 * Per-solver state for this constraint, or null if it needs none.
+	 */
+	protected Object newState(Solver solver) {
+		return null;
+	}
+
+	/**
+	 * Removes values that cannot be part of a solution. Returns false if some
+	 * domain in the scope would become empty. Changes made here do not
+	 * schedule this constraint again, so it should reach its own fixed point
+	 * before returning.
+	 */
+	protected abstract boolean propagate(Solver solver, Object state);
+
+}
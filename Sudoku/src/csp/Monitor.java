@@ -0,0 +1,12 @@
+package csp;
+
+/**
+ * Called by Solver for every search node, before its branches are tried.
+ * A monitor may throw to abandon the search; the solver state is then
+ * undefined until the next undo or a new Solver.
+ */
+public interface Monitor {
+
+	void node(int depth);
+
+}
@@ -0,0 +1,26 @@
+package csp;
+
+/**
+ * x != y. Only acts once one side is fixed, which is already arc
+ * consistency for disequality.
+ */
+final class NotEqual extends Constraint {
+
+	private final int x;
+	private final int y;
+
+	NotEqual(int x, int y) {
+		super(x, y);
+		this.x = x;
+		this.y = y;
+	}
+
+	@Override
+	protected boolean propagate(Solver solver, Object state) {
+		if (solver.isFixed(x) && !solver.restrict(y, ~solver.domain(x))) {
+			return false;
+		}
+		return !solver.isFixed(y) || solver.restrict(x, ~solver.domain(y));
+	}
+
+}
@@ -0,0 +1,118 @@
+package csp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A constraint satisfaction problem: variables numbered from 0, each with a
+ * domain of values 0 to 63 stored as a bitset (bit v set when v is allowed),
+ * and the constraints between them. A Problem is built once and can then be
+ * searched by any number of Solvers, also concurrently, as long as it is no
+ * longer modified.
+ */
+public final class Problem {
+
+	private long[] domains = new long[16];
+	private int variables;
+	private final List<Constraint> constraints = new ArrayList<Constraint>();
+
+	// Indexes of the constraints watching each variable, built on first use
+	private int[][] watchers;
+
+	/**
+	 * Adds a variable with the given initial domain and returns its index.
+	 */
+	public int addVariable(long domain) {
+		if (domain == 0) {
+			throw new IllegalArgumentException("Empty domain");
+		}
+		if (variables == domains.length) {
+			domains = Arrays.copyOf(domains, variables * 2);
+		}
+		domains[variables] = domain;
+		watchers = null;
+		return variables++;
+	}
+
+	/**
+	 * Adds a variable whose domain is the values min to max inclusive.
+	 */
+	public int addVariable(int min, int max) {
+		if (min < 0 || max > 63 || min > max) {
+			throw new IllegalArgumentException("Values must be within 0..63: " + min + ".." + max);
+		}
+		return addVariable((-1L >>> (63 - max)) & (-1L << min));
+	}
+
+	public Constraint add(Constraint constraint) {
+		for (int var : constraint.scope) {
+			if (var < 0 || var >= variables) {
+				throw new IllegalArgumentException("Unknown variable " + var);
+			}
+		}
+		constraints.add(constraint);
+		watchers = null;
+		return constraint;
+	}
+
+	public Constraint addAllDifferent(int... vars) {
+		return add(new AllDifferent(vars));
+	}
+
+	public Constraint addNotEqual(int x, int y) {
+		return add(new NotEqual(x, y));
+	}
+
+	/**
+	 * Adds a binary constraint that allows exactly the pairs accepted by
+	 * relation, kept arc consistent with AC-2001.
+	 */
+	public Constraint addBinary(int x, int y, Relation relation) {
+		return add(new BinaryConstraint(x, y, relation));
+	}
+
+	public int variables() {
+		return variables;
+	}
+
+	public long domain(int var) {
+		return domains[var];
+	}
+
+	long[] initialDomains() {
+		return Arrays.copyOf(domains, variables);
+	}
+
+	int constraintCount() {
+		return constraints.size();
+	}
+
+	Constraint constraint(int index) {
+		return constraints.get(index);
+	}
+
+	synchronized int[][] watchers() {
+		if (watchers == null) {
+			int[] counts = new int[variables];
+			for (Constraint constraint : constraints) {
+				for (int var : constraint.scope) {
+					counts[var]++;
+				}
+			}
+			int[][] built = new int[variables][];
+			for (int var = 0; var < variables; var++) {
+				built[var] = new int[counts[var]];
+				counts[var] = 0;
+			}
+			for (int c = 0; c < constraints.size(); c++) {
+				for (int var : constraints.get(c).scope) {
+					built[var][counts[var]++] = c;
+				}
+			}
+			watchers = built;
+		}
+		return watchers;
+	}
+
+}
@@ -0,0 +1,10 @@
+package csp;
+
+/**
+ * Allowed value pairs of a binary constraint.
+ */
+public interface Relation {
+
+	boolean allows(int x, int y);
+
+}
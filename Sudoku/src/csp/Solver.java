@@ -0,0 +1,327 @@
+package csp;
+
+import java.util.Arrays;
+
+/**
+ * Search state for one Problem: the current domains, a trail to roll them
+ * back, and a queue of constraints to propagate (AC-3 over constraints
+ * rather than arcs). A constraint is queued when a domain in its scope
+ * changes, unless it made the change itself, and each constraint is in the
+ * queue at most once.
+ * 
+ * solve is a depth-first search that propagates to a fixed point after
+ * every assignment. Which variable and value are tried next is up to the
+ * VariableSelector and ValueSelector, by default first fail and the
+ * smallest value.
+ */
+public final class Solver {
+
+	final Problem problem;
+	final long[] domains;
+
+	private final Constraint[] constraints;
+	private final Object[] states;
+	private final int[][] watchers;
+
+	// Reversible values that constraints keep across calls, see newReversible
+	private long[] reversibles = new long[16];
+	private int reversibleCount;
+
+	// Trail entries: a variable with its previous domain, or ~slot with the
+	// previous value of a reversible
+	private int[] trailVar;
+	private long[] trailDomain;
+	private int trailSize;
+
+	// Circular queue of constraint indexes, each queued at most once
+	private final int[] queue;
+	private final boolean[] queued;
+	private int head;
+	private int queueSize;
+	private int running = -1;
+
+	private VariableSelector variableSelector = VariableSelector.MIN_DOMAIN;
+	private ValueSelector valueSelector = ValueSelector.MIN_VALUE;
+	private Monitor monitor;
+
+	private long nodes;
+	private long backtracks;
+	private long revisions;
+
+	public Solver(Problem problem) {
+		this.problem = problem;
+		domains = problem.initialDomains();
+		watchers = problem.watchers();
+		trailVar = new int[Math.max(16, domains.length * 4)];
+		trailDomain = new long[trailVar.length];
+		int count = problem.constraintCount();
+		constraints = new Constraint[count];
+		states = new Object[count];
+		for (int c = 0; c < count; c++) {
+			constraints[c] = problem.constraint(c);
+			states[c] = constraints[c].newState(this);
+		}
+		queue = new int[count];
+		queued = new boolean[count];
+		for (int c = 0; c < count; c++) {
+			enqueue(c);
+		}
+	}
+
+	/**
+	 * Rolls back every change and clears the counters, leaving the solver as
+	 * it was when created, so it can be reused for another search of the
+	 * same Problem without allocating.
+	 */
+	public void reset() {
+		undo(0);
+		while (queueSize > 0) {
+			queued[queue[head]] = false;
+			head = head + 1 == queue.length ? 0 : head + 1;
+			queueSize--;
+		}
+		for (int c = 0; c < constraints.length; c++) {
+			enqueue(c);
+		}
+		nodes = 0;
+		backtracks = 0;
+		revisions = 0;
+	}
+
+	public void setVariableSelector(VariableSelector selector) {
+		variableSelector = selector;
+	}
+
+	public void setValueSelector(ValueSelector selector) {
+		valueSelector = selector;
+	}
+
+	public void setMonitor(Monitor monitor) {
+		this.monitor = monitor;
+	}
+
+	public Problem problem() {
+		return problem;
+	}
+
+	public long domain(int var) {
+		return domains[var];
+	}
+
+	public boolean isFixed(int var) {
+		long domain = domains[var];
+		return (domain & (domain - 1)) == 0;
+	}
+
+	/**
+	 * The value of a fixed variable.
+	 */
+	public int value(int var) {
+		return Long.numberOfTrailingZeros(domains[var]);
+	}
+
+	/**
+	 * Intersects the domain of var with mask and queues the constraints on var
+	 * if it shrank. Returns false, leaving the domain as it was, if nothing
+	 * would be left.
+	 */
+	public boolean restrict(int var, long mask) {
+		long domain = domains[var];
+		long narrowed = domain & mask;
+		if (narrowed == domain) {
+			return true;
+		}
+		if (narrowed == 0) {
+			return false;
+		}
+		push(var, domain);
+		domains[var] = narrowed;
+		revisions++;
+		for (int c : watchers[var]) {
+			if (c != running) {
+				enqueue(c);
+			}
+		}
+		return true;
+	}
+
+	public boolean remove(int var, int value) {
+		return restrict(var, ~(1L << value));
+	}
+
+	public boolean assign(int var, int value) {
+		return restrict(var, 1L << value);
+	}
+
+	/**
+	 * Allocates a value that undo rolls back along with the domains, for
+	 * constraints that maintain incremental state. Meant to be called from
+	 * Constraint.newState; returns the slot to pass to getReversible and
+	 * setReversible.
+	 */
+	public int newReversible(long initial) {
+		if (reversibleCount == reversibles.length) {
+			reversibles = Arrays.copyOf(reversibles, reversibleCount * 2);
+		}
+		reversibles[reversibleCount] = initial;
+		return reversibleCount++;
+	}
+
+	public long getReversible(int slot) {
+		return reversibles[slot];
+	}
+
+	public void setReversible(int slot, long value) {
+		if (reversibles[slot] != value) {
+			push(~slot, reversibles[slot]);
+			reversibles[slot] = value;
+		}
+	}
+
+	private void push(int entry, long previous) {
+		if (trailSize == trailVar.length) {
+			trailVar = Arrays.copyOf(trailVar, trailSize * 2);
+			trailDomain = Arrays.copyOf(trailDomain, trailSize * 2);
+		}
+		trailVar[trailSize] = entry;
+		trailDomain[trailSize] = previous;
+		trailSize++;
+	}
+
+	/**
+	 * Runs queued constraints until none is left. Returns false as soon as one
+	 * fails; the queue is emptied either way.
+	 */
+	public boolean propagate() {
+		while (queueSize > 0) {
+			int c = queue[head];
+			head = head + 1 == queue.length ? 0 : head + 1;
+			queueSize--;
+			queued[c] = false;
+			running = c;
+			boolean consistent = constraints[c].propagate(this, states[c]);
+			running = -1;
+			if (!consistent) {
+				while (queueSize > 0) {
+					queued[queue[head]] = false;
+					head = head + 1 == queue.length ? 0 : head + 1;
+					queueSize--;
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void enqueue(int c) {
+		if (!queued[c]) {
+			queued[c] = true;
+			int tail = head + queueSize;
+			queue[tail >= queue.length ? tail - queue.length : tail] = c;
+			queueSize++;
+		}
+	}
+
+	public int mark() {
+		return trailSize;
+	}
+
+	/**
+	 * Restores every domain and reversible to what it was at mark.
+	 */
+	public void undo(int mark) {
+		while (trailSize > mark) {
+			trailSize--;
+			int entry = trailVar[trailSize];
+			if (entry < 0) {
+				reversibles[~entry] = trailDomain[trailSize];
+			} else {
+				domains[entry] = trailDomain[trailSize];
+			}
+		}
+	}
+
+	/**
+	 * Propagates, then searches for an assignment that satisfies every
+	 * constraint. On success each domain holds a single value.
+	 */
+	public boolean solve() {
+		return propagate() && solve(0);
+	}
+
+	private boolean solve(int depth) {
+		int var = variableSelector.select(this);
+		if (var < 0) {
+			return true;
+		}
+		nodes++;
+		if (monitor != null) {
+			monitor.node(depth);
+		}
+		long remaining = domains[var];
+		while (remaining != 0) {
+			int value = valueSelector.select(this, var, remaining);
+			remaining &= ~(1L << value);
+			int mark = mark();
+			if (assign(var, value) && propagate() && solve(depth + 1)) {
+				return true;
+			}
+			undo(mark);
+			backtracks++;
+		}
+		return false;
+	}
+
+	/**
+	 * Counts solutions, giving up once limit have been found. The domains are
+	 * rolled back to the propagated starting state before returning.
+	 */
+	public long countSolutions(long limit) {
+		if (!propagate()) {
+			return 0;
+		}
+		int mark = mark();
+		long count = countSolutions(limit, 0);
+		undo(mark);
+		return count;
+	}
+
+	private long countSolutions(long limit, int depth) {
+		int var = variableSelector.select(this);
+		if (var < 0) {
+			return 1;
+		}
+		nodes++;
+		if (monitor != null) {
+			monitor.node(depth);
+		}
+		long count = 0;
+		long remaining = domains[var];
+		while (remaining != 0 && count < limit) {
+			int value = valueSelector.select(this, var, remaining);
+			remaining &= ~(1L << value);
+			int mark = mark();
+			if (assign(var, value) && propagate()) {
+				count += countSolutions(limit - count, depth + 1);
+			}
+			undo(mark);
+		}
+		return count;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	public long getBacktracks() {
+		return backtracks;
+	}
+
+	/**
+	 * Number of times a domain was narrowed.
+	 */
+	public long getRevisions() {
+		return revisions;
+	}
+
+}
@@ -0,0 +1,26 @@
+package csp;
+
+/**
+ * Picks the value to try next for a branching variable.
+ */
+public interface ValueSelector {
+
+	/**
+	 * One of the values in remaining, a non-empty subset of the domain of
+	 * var that has not been tried at this node yet.
+	 */
+	int select(Solver solver, int var, long remaining);
+
+	ValueSelector MIN_VALUE = new ValueSelector() {
+		public int select(Solver solver, int var, long remaining) {
+			return Long.numberOfTrailingZeros(remaining);
+		}
+	};
+
+	ValueSelector MAX_VALUE = new ValueSelector() {
+		public int select(Solver solver, int var, long remaining) {
+			return 63 - Long.numberOfLeadingZeros(remaining);
+		}
+	};
+
+}
@@ -0,0 +1,50 @@
+package csp;
+
+/**
+ * Picks the variable to branch on next.
+ */
+public interface VariableSelector {
+
+	/**
+	 * An unfixed variable of solver, or -1 when every variable is fixed.
+	 */
+	int select(Solver solver);
+
+	/**
+	 * First unfixed variable in index order.
+	 */
+	VariableSelector INPUT_ORDER = new VariableSelector() {
+		public int select(Solver solver) {
+			for (int var = 0; var < solver.domains.length; var++) {
+				if (!solver.isFixed(var)) {
+					return var;
+				}
+			}
+			return -1;
+		}
+	};
+
+	/**
+	 * Unfixed variable with the fewest values left, lowest index first on
+	 * ties (first fail).
+	 */
+	VariableSelector MIN_DOMAIN = new VariableSelector() {
+		public int select(Solver solver) {
+			long[] domains = solver.domains;
+			int best = -1;
+			int bestCount = Integer.MAX_VALUE;
+			for (int var = 0; var < domains.length; var++) {
+				int count = Long.bitCount(domains[var]);
+				if (count > 1 && count < bestCount) {
+					best = var;
+					bestCount = count;
+					if (count == 2) {
+						break;
+					}
+				}
+			}
+			return best;
+		}
+	};
+
+}
@@ -0,0 +1,469 @@
+package sudoku;
+
+import java.util.Arrays;
+
+/**
+ * Forward checking with conflict-directed backjumping (FC-CBJ) and a
+ * bounded nogood store. Forward checking also places naked and hidden
+ * singles as they appear, so on big boards a decision settles whole chains
+ * of cells, as in Propagator. Every search level keeps the set of earlier
+ * levels that caused its failures; when a cell runs out of values the
+ * search jumps straight back to the most recent level in that set instead
+ * of the previous one, and the assignments in the set are remembered as a
+ * nogood so the same combination is refused immediately elsewhere in the
+ * tree.
+ * 
+ * Levels are numbered from 1; givens are level 0 and never blamed. Level
+ * sets are bitsets over levels stored in long arrays. Every placed cell
+ * keeps the levels it depends on: its own level for a decision, and for a
+ * single the levels that removed its other candidates, or that kept its
+ * digit out of the rest of the unit. Blaming a removal then blames the
+ * levels of the placement that made it.
+ */
+final class BackjumpSolver {
+
+	static final int NOGOOD_CAPACITY = 4096;
+	static final int NOGOOD_LENGTH = 12;
+
+	private final Geometry geometry;
+	private final int stride;
+
+	final SolverStats stats = new SolverStats();
+	long nogoodsLearned;
+	long nogoodPrunes;
+
+	private int[] value;
+	private long[] domain;
+	private long[][] reason;
+	// Cell whose placement removed digit d from cell c, at c * stride + d
+	private int[] prunedBy;
+	private int open;
+
+	// Trail entries: a digit removed from a cell, or digit 0 for a placement
+	private int[] trailCell;
+	private int[] trailDigit;
+	private int trailSize;
+
+	// Placements whose peers have not been checked yet
+	private int[] queue;
+	private int queueHead;
+	private int queueSize;
+
+	private final NogoodStore nogoods;
+
+	BackjumpSolver(Geometry geometry) {
+		this.geometry = geometry;
+		this.stride = geometry.size + 1;
+		nogoods = new NogoodStore(geometry.cells * 64, NOGOOD_CAPACITY, NOGOOD_LENGTH);
+	}
+
+	/**
+	 * Solves vals in place. Returns false if the givens conflict or there is
+	 * no solution.
+	 */
+	boolean solve(int[][] vals) {
+		stats.reset();
+		nogoodsLearned = 0;
+		nogoodPrunes = 0;
+		nogoods.clear();
+		boolean solved = search(vals);
+		stats.finish(solved);
+		return solved;
+	}
+
+	private boolean search(int[][] vals) {
+		int cells = geometry.cells;
+		int empty = 0;
+		for (int cell = 0; cell < cells; cell++) {
+			if (vals[geometry.rowOf[cell]][geometry.colOf[cell]] == 0) {
+				empty++;
+			}
+		}
+		int words = (empty + 2 + 63) / 64;
+		value = new int[cells];
+		domain = new long[cells];
+		reason = new long[cells][words];
+		prunedBy = new int[cells * stride];
+		trailCell = new int[cells * stride];
+		trailDigit = new int[cells * stride];
+		trailSize = 0;
+		queue = new int[cells];
+		queueHead = 0;
+		queueSize = 0;
+		open = cells;
+		Arrays.fill(domain, geometry.fullMask);
+
+		for (int cell = 0; cell < cells; cell++) {
+			int v = vals[geometry.rowOf[cell]][geometry.colOf[cell]];
+			if (v == 0 || value[cell] == v) {
+				continue;
+			}
+			if (value[cell] != 0 || (domain[cell] & (1L << v)) == 0) {
+				return false;
+			}
+			place(cell, v);
+			if (!propagate(null)) {
+				return false;
+			}
+		}
+		if (open == 0) {
+			copyTo(vals);
+			return true;
+		}
+
+		long[][] conflicts = new long[empty + 2][words];
+		int[] levelCell = new int[empty + 2];
+		long[] remaining = new long[empty + 2];
+		int[] levelStart = new int[empty + 2];
+		int[] literals = new int[NOGOOD_LENGTH];
+
+		int k = 1;
+		levelCell[k] = select();
+		remaining[k] = domain[levelCell[k]];
+		stats.node(0);
+		while (true) {
+			int cell = levelCell[k];
+			boolean placed = false;
+			while (remaining[k] != 0 && !placed) {
+				long bit = Long.lowestOneBit(remaining[k]);
+				remaining[k] &= ~bit;
+				int digit = Long.numberOfTrailingZeros(bit);
+
+				int slot = nogoods.violated(cell * 64 + digit, value);
+				if (slot >= 0) {
+					nogoodPrunes++;
+					nogoods.blame(slot, cell * 64 + digit, reason, conflicts[k]);
+					continue;
+				}
+
+				levelStart[k] = trailSize;
+				long[] own = reason[cell];
+				Arrays.fill(own, 0);
+				own[k >>> 6] |= 1L << (k & 63);
+				place(cell, digit);
+				if (!propagate(conflicts[k])) {
+					// Placements of this level blame it as well
+					conflicts[k][k >>> 6] &= ~(1L << (k & 63));
+					undoTo(levelStart[k]);
+					stats.backtracks++;
+					continue;
+				}
+				placed = true;
+			}
+
+			if (placed) {
+				if (open == 0) {
+					copyTo(vals);
+					return true;
+				}
+				k++;
+				levelCell[k] = select();
+				remaining[k] = domain[levelCell[k]];
+				Arrays.fill(conflicts[k], 0);
+				stats.node(k - 1);
+				continue;
+			}
+
+			// Dead end: blame the levels that pruned this cell as well
+			long[] conflict = conflicts[k];
+			addPruners(cell, conflict);
+			int h = highestLevel(conflict);
+			if (h <= 0) {
+				return false;
+			}
+
+			int length = 0;
+			for (int w = 0; w < words && length <= NOGOOD_LENGTH; w++) {
+				for (long bits = conflict[w]; bits != 0 && length <= NOGOOD_LENGTH; bits &= bits - 1) {
+					int level = w * 64 + Long.numberOfTrailingZeros(bits);
+					if (length < NOGOOD_LENGTH) {
+						literals[length] = levelCell[level] * 64 + value[levelCell[level]];
+					}
+					length++;
+				}
+			}
+			if (length <= NOGOOD_LENGTH) {
+				nogoods.add(literals, length);
+				nogoodsLearned++;
+			}
+
+			long[] target = conflicts[h];
+			for (int w = 0; w < words; w++) {
+				target[w] |= conflict[w];
+			}
+			target[h >>> 6] &= ~(1L << (h & 63));
+
+			undoTo(levelStart[h]);
+			k = h;
+			stats.backtracks++;
+		}
+	}
+
+	private void copyTo(int[][] vals) {
+		for (int cell = 0; cell < geometry.cells; cell++) {
+			vals[geometry.rowOf[cell]][geometry.colOf[cell]] = value[cell];
+		}
+	}
+
+	// Unassigned cell with the fewest candidates
+	private int select() {
+		int best = -1;
+		int bestCount = Integer.MAX_VALUE;
+		for (int cell = 0; cell < geometry.cells; cell++) {
+			if (value[cell] == 0) {
+				int count = Long.bitCount(domain[cell]);
+				if (count < bestCount) {
+					best = cell;
+					bestCount = count;
+				}
+			}
+		}
+		return best;
+	}
+
+	// Sets cell to digit and queues it for forward checking; reason[cell]
+	// must already hold the levels the placement depends on
+	private void place(int cell, int digit) {
+		value[cell] = digit;
+		open--;
+		trailCell[trailSize] = cell;
+		trailDigit[trailSize] = 0;
+		trailSize++;
+		queue[queueSize++] = cell;
+	}
+
+	// Forward checks every queued placement, including the singles placed on
+	// the way. On failure the levels responsible are added to conflict, which
+	// may then include the current level; the queue is emptied either way.
+	private boolean propagate(long[] conflict) {
+		boolean consistent = true;
+		while (consistent && queueHead < queueSize) {
+			int cell = queue[queueHead++];
+			consistent = forwardCheck(cell, value[cell], conflict);
+		}
+		queueHead = 0;
+		queueSize = 0;
+		return consistent;
+	}
+
+	// Removes digit from the unassigned peers of cell, placing the peers
+	// that are left with one candidate. Fails if a peer has no digit left,
+	// already holds digit, or a unit of cell or of a peer has no place left
+	// for a digit that cell or the peer no longer offers.
+	private boolean forwardCheck(int cell, int digit, long[] conflict) {
+		long bit = 1L << digit;
+		for (long others = domain[cell] & ~bit; others != 0; others &= others - 1) {
+			int other = Long.numberOfTrailingZeros(others);
+			if (!placeable(geometry.rowOf[cell], other, conflict)
+					|| !placeable(geometry.size + geometry.colOf[cell], other, conflict)
+					|| !placeable(2 * geometry.size + geometry.boxOf[cell], other, conflict)) {
+				return false;
+			}
+		}
+		for (int peer : geometry.peers[cell]) {
+			if (value[peer] == digit) {
+				// Both were placed by singles before either was checked
+				if (conflict != null) {
+					or(conflict, reason[cell]);
+					or(conflict, reason[peer]);
+				}
+				return false;
+			}
+			if (value[peer] == 0 && (domain[peer] & bit) != 0) {
+				long left = domain[peer] & ~bit;
+				domain[peer] = left;
+				prunedBy[peer * stride + digit] = cell;
+				trailCell[trailSize] = peer;
+				trailDigit[trailSize] = digit;
+				trailSize++;
+				stats.propagations++;
+				if (left == 0) {
+					if (conflict != null) {
+						addPruners(peer, conflict);
+					}
+					return false;
+				}
+				if ((left & (left - 1)) == 0) {
+					long[] own = reason[peer];
+					Arrays.fill(own, 0);
+					addPruners(peer, own);
+					place(peer, Long.numberOfTrailingZeros(left));
+				}
+				if (!placeable(geometry.rowOf[peer], digit, conflict)
+						|| !placeable(geometry.size + geometry.colOf[peer], digit, conflict)
+						|| !placeable(2 * geometry.size + geometry.boxOf[peer], digit, conflict)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	// Whether digit is placed in the unit or still fits one of its open
+	// cells; if only one cell is left, digit is placed there. If none is,
+	// the levels that keep it out of every cell are blamed.
+	private boolean placeable(int unit, int digit, long[] conflict) {
+		long bit = 1L << digit;
+		int last = -1;
+		int places = 0;
+		for (int c : geometry.units[unit]) {
+			if (value[c] == digit) {
+				return true;
+			}
+			if (value[c] == 0 && (domain[c] & bit) != 0) {
+				last = c;
+				places++;
+			}
+		}
+		if (places > 1) {
+			return true;
+		}
+		if (places == 1) {
+			long[] own = reason[last];
+			Arrays.fill(own, 0);
+			for (int c : geometry.units[unit]) {
+				if (c != last) {
+					blameOutside(c, digit, own);
+				}
+			}
+			place(last, digit);
+			return true;
+		}
+		if (conflict != null) {
+			for (int c : geometry.units[unit]) {
+				blameOutside(c, digit, conflict);
+			}
+		}
+		return false;
+	}
+
+	// Adds to set the levels that keep digit out of cell: those of the
+	// placement that removed it, or of the cell's own placement
+	private void blameOutside(int cell, int digit, long[] set) {
+		or(set, reason[value[cell] == 0 ? prunedBy[cell * stride + digit] : cell]);
+	}
+
+	private void undoTo(int mark) {
+		while (trailSize > mark) {
+			trailSize--;
+			int cell = trailCell[trailSize];
+			int digit = trailDigit[trailSize];
+			if (digit == 0) {
+				value[cell] = 0;
+				open++;
+			} else {
+				domain[cell] |= 1L << digit;
+			}
+		}
+	}
+
+	// Adds to set the levels of every placement that removed a digit from
+	// cell
+	private void addPruners(int cell, long[] set) {
+		for (long gone = geometry.fullMask & ~domain[cell]; gone != 0; gone &= gone - 1) {
+			or(set, reason[prunedBy[cell * stride + Long.numberOfTrailingZeros(gone)]]);
+		}
+	}
+
+	private static void or(long[] set, long[] levels) {
+		for (int w = 0; w < set.length; w++) {
+			set[w] |= levels[w];
+		}
+	}
+
+	private static int highestLevel(long[] set) {
+		for (int w = set.length - 1; w >= 0; w--) {
+			if (set[w] != 0) {
+				return w * 64 + 63 - Long.numberOfLeadingZeros(set[w]);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Fixed-size ring of short nogoods. A literal is cell * 64 + digit; every
+	 * literal has an intrusive list of the entries that mention it, so a
+	 * lookup only visits nogoods containing the value being tried. When full,
+	 * the oldest nogood is overwritten.
+	 */
+	private static final class NogoodStore {
+
+		private final int width;
+		private final int[] head;
+		private final int[] literal;
+		private final int[] next;
+		private final int[] prev;
+		private final int[] length;
+		private int oldest;
+
+		NogoodStore(int literals, int capacity, int width) {
+			this.width = width;
+			head = new int[literals];
+			literal = new int[capacity * width];
+			next = new int[capacity * width];
+			prev = new int[capacity * width];
+			length = new int[capacity];
+			clear();
+		}
+
+		void clear() {
+			Arrays.fill(head, -1);
+			Arrays.fill(length, 0);
+			oldest = 0;
+		}
+
+		void add(int[] literals, int count) {
+			int slot = oldest;
+			oldest = (oldest + 1) % length.length;
+			for (int i = 0; i < length[slot]; i++) {
+				int e = slot * width + i;
+				if (prev[e] >= 0) {
+					next[prev[e]] = next[e];
+				} else {
+					head[literal[e]] = next[e];
+				}
+				if (next[e] >= 0) {
+					prev[next[e]] = prev[e];
+				}
+			}
+			length[slot] = count;
+			for (int i = 0; i < count; i++) {
+				int e = slot * width + i;
+				literal[e] = literals[i];
+				prev[e] = -1;
+				next[e] = head[literals[i]];
+				if (next[e] >= 0) {
+					prev[next[e]] = e;
+				}
+				head[literals[i]] = e;
+			}
+		}
+
+		// Slot of a nogood that lit would complete, or -1
+		int violated(int lit, int[] value) {
+			for (int e = head[lit]; e >= 0; e = next[e]) {
+				int slot = e / width;
+				boolean all = true;
+				for (int i = 0; i < length[slot] && all; i++) {
+					int other = literal[slot * width + i];
+					all = other == lit || value[other >>> 6] == (other & 63);
+				}
+				if (all) {
+					return slot;
+				}
+			}
+			return -1;
+		}
+
+		// Adds the levels the other literals of slot depend on to set
+		void blame(int slot, int lit, long[][] reason, long[] set) {
+			for (int i = 0; i < length[slot]; i++) {
+				int other = literal[slot * width + i];
+				if (other != lit) {
+					or(set, reason[other >>> 6]);
+				}
+			}
+		}
+	}
+
+}
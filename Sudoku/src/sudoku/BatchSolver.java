@@ -0,0 +1,214 @@
+package sudoku;
+
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solves every puzzle in a file on a thread pool. Two record formats are
+ * accepted and may be mixed: the size-header format Sudoku reads (N followed
+ * by N*N numbers), and the one-line 81 character format where '0' or '.'
+ * marks an empty cell. Each worker reuses one Propagator per board size.
+ * Results are written in input order, in the format they were read in, by
+ * a single buffered writer; an unsolvable puzzle is written as -1. With a
+ * cache size, puzzles equivalent to one already solved are answered from a
+ * SolutionCache.
+ * 
+ * Usage: BatchSolver input.txt output.txt [threads] [cache size]
+ */
+public class BatchSolver {
+
+	private static final ThreadLocal<Propagator[]> BOARDS = new ThreadLocal<Propagator[]>() {
+		@Override
+		protected Propagator[] initialValue() {
+			return new Propagator[64];
+		}
+	};
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 2) {
+			System.out.println("Usage: BatchSolver input.txt output.txt [threads] [cache size]");
+			return;
+		}
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		SolutionCache cache = args.length > 3 ? new SolutionCache(Integer.parseInt(args[3])) : null;
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		// Bounded number of puzzles in flight, so input is streamed and not
+		// read into memory all at once
+		int window = threads * 256;
+		ArrayDeque<Future<Result>> inFlight = new ArrayDeque<Future<Result>>();
+		long[] latencies = new long[1024];
+		int count = 0;
+		int solved = 0;
+
+		long start = System.nanoTime();
+		PuzzleReader reader = new PuzzleReader(new FileInputStream(args[0]));
+		Writer writer = new BufferedWriter(new FileWriter(args[1]), 1 << 16);
+		try {
+			Puzzle puzzle;
+			while ((puzzle = read(reader)) != null) {
+				if (inFlight.size() == window) {
+					Result result = get(inFlight.poll());
+					write(writer, result);
+					latencies = record(latencies, count++, result.nanos);
+					solved += result.solved ? 1 : 0;
+				}
+				puzzle.cache = cache;
+				inFlight.add(pool.submit(puzzle));
+			}
+			while (!inFlight.isEmpty()) {
+				Result result = get(inFlight.poll());
+				write(writer, result);
+				latencies = record(latencies, count++, result.nanos);
+				solved += result.solved ? 1 : 0;
+			}
+		} finally {
+			reader.close();
+			writer.close();
+			pool.shutdown();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		Arrays.sort(latencies, 0, count);
+		System.out.println("Puzzles: " + count + ", solved: " + solved + ", threads: " + threads);
+		System.out.printf("Elapsed: %.3f s, throughput: %.1f puzzles/sec%n", elapsed / 1e9,
+				count / (elapsed / 1e9));
+		if (count > 0) {
+			System.out.printf("Latency p50: %.1f us, p99: %.1f us, max: %.1f us%n",
+					latencies[(int) (count * 0.50)] / 1e3, latencies[Math.min(count - 1, (int) (count * 0.99))] / 1e3,
+					latencies[count - 1] / 1e3);
+		}
+		if (cache != null) {
+			System.out.println("Cache: " + cache);
+		}
+	}
+
+	static final class Puzzle implements Callable<Result> {
+		final int size;
+		final int[] cells;
+		final boolean compact;
+		SolutionCache cache;
+		// Time the solve may take once a worker starts it, 0 for no limit
+		long timeoutNanos;
+
+		Puzzle(int size, int[] cells, boolean compact) {
+			this.size = size;
+			this.cells = cells;
+			this.compact = compact;
+		}
+
+		@Override
+		public Result call() {
+			long start = System.nanoTime();
+			Propagator[] boards = BOARDS.get();
+			Propagator board = boards[size];
+			if (board == null) {
+				board = new Propagator(Geometry.forSize(size));
+				boards[size] = board;
+			}
+			// The same budget check Sudoku.solveWithin gives PROPAGATE, on the
+			// board this worker keeps
+			board.stats.watch(timeoutNanos > 0 ? new SolveBudget(timeoutNanos, TimeUnit.NANOSECONDS) : null);
+			boolean solved;
+			try {
+				if (cache != null) {
+					solved = cache.solve(cells, board);
+				} else {
+					solved = board.load(cells) && board.solve();
+					if (solved) {
+						System.arraycopy(board.values, 0, cells, 0, cells.length);
+					}
+				}
+			} catch (SolveBudget.Expired expired) {
+				return new Result(this, false, true, System.nanoTime() - start);
+			}
+			return new Result(this, solved, false, System.nanoTime() - start);
+		}
+	}
+
+	static final class Result {
+		final Puzzle puzzle;
+		final boolean solved;
+		final boolean timedOut;
+		final long nanos;
+
+		Result(Puzzle puzzle, boolean solved, boolean timedOut, long nanos) {
+			this.puzzle = puzzle;
+			this.solved = solved;
+			this.timedOut = timedOut;
+			this.nanos = nanos;
+		}
+	}
+
+	/**
+	 * Reads the next puzzle, or returns null at end of input. A record that
+	 * is short or whose size is not a perfect square is a parse error.
+	 */
+	static Puzzle read(PuzzleReader reader) throws IOException {
+		int[] cells = reader.read(null);
+		if (cells == null) {
+			return null;
+		}
+		if (reader.count != cells.length) {
+			throw new RuntimeException("Incorrect number of inputs.");
+		}
+		int boxSize = (int) Math.sqrt(reader.size);
+		if (boxSize * boxSize != reader.size) {
+			throw new RuntimeException("Unsupported board size: " + reader.size);
+		}
+		return new Puzzle(reader.size, cells, reader.compact);
+	}
+
+	static void write(Writer writer, Result result) throws IOException {
+		Puzzle puzzle = result.puzzle;
+		if (!result.solved) {
+			writer.write("-1\n");
+			return;
+		}
+		if (puzzle.compact) {
+			for (int value : puzzle.cells) {
+				writer.write('0' + value);
+			}
+			writer.write('\n');
+			return;
+		}
+		writer.write(Integer.toString(puzzle.size));
+		writer.write('\n');
+		for (int i = 0; i < puzzle.size; i++) {
+			for (int j = 0; j < puzzle.size; j++) {
+				if (j != 0) {
+					writer.write(' ');
+				}
+				writer.write(Integer.toString(puzzle.cells[i * puzzle.size + j]));
+			}
+			writer.write('\n');
+		}
+	}
+
+	private static Result get(Future<Result> future) throws InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private static long[] record(long[] latencies, int index, long nanos) {
+		if (index == latencies.length) {
+			latencies = Arrays.copyOf(latencies, index * 2);
+		}
+		latencies[index] = nanos;
+		return latencies;
+	}
+
+}
@@ -0,0 +1,319 @@
+package sudoku;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Canonical form of a board under the Sudoku symmetries: transposition,
+ * permuting bands, rows within a band, stacks and columns within a stack,
+ * and relabeling digits. The canonical board is the lexicographically
+ * smallest transformed board, with digits renumbered in order of first
+ * appearance and empty cells sorting first.
+ * 
+ * Rows and columns are first sorted by invariants (givens per row, per
+ * stack and in the crossing columns) and only orderings that permute tied
+ * rows, bands, columns or stacks are searched. When ties allow more than
+ * MAX_ORDERS orderings per axis only the first MAX_ORDERS are tried, so two
+ * equivalent, very symmetric boards may then get different keys. The
+ * transform found is always exact, so mapping a solution of the canonical
+ * board back through it always gives a solution of the original.
+ */
+final class Canonical {
+
+	static final int MAX_ORDERS = 64;
+
+	final int size;
+	final String key;
+
+	private final boolean transposed;
+	private final int[] rowOrder;
+	private final int[] colOrder;
+	// Original digit to canonical digit and back, 0 stays 0
+	private final int[] relabel;
+	private final int[] inverse;
+
+	private Canonical(int size, int[] best, boolean transposed, int[] rowOrder, int[] colOrder, int[] relabel) {
+		this.size = size;
+		this.transposed = transposed;
+		this.rowOrder = rowOrder;
+		this.colOrder = colOrder;
+		this.relabel = relabel;
+		inverse = new int[size + 1];
+		for (int digit = 0; digit <= size; digit++) {
+			inverse[relabel[digit]] = digit;
+		}
+		char[] text = new char[best.length];
+		for (int i = 0; i < best.length; i++) {
+			text[i] = (char) ('0' + best[i]);
+		}
+		key = new String(text);
+	}
+
+	/**
+	 * Canonical form of the size x size board stored row-major in cells.
+	 */
+	static Canonical of(int size, int[] cells) {
+		Search search = new Search(size);
+		search.run(cells, false);
+		int[] transposed = new int[cells.length];
+		for (int row = 0; row < size; row++) {
+			for (int col = 0; col < size; col++) {
+				transposed[col * size + row] = cells[row * size + col];
+			}
+		}
+		search.run(transposed, true);
+		int[] relabel = search.bestRelabel;
+		int next = 1;
+		for (int digit = 1; digit <= size; digit++) {
+			next = Math.max(next, relabel[digit] + 1);
+		}
+		// Digits absent from the board take the remaining labels in order
+		for (int digit = 1; digit <= size; digit++) {
+			if (relabel[digit] == 0) {
+				relabel[digit] = next++;
+			}
+		}
+		return new Canonical(size, search.best, search.bestTransposed, search.bestRows, search.bestCols, relabel);
+	}
+
+	/**
+	 * Applies this transform to a board of the same size, e.g. the original
+	 * puzzle or one of its solutions.
+	 */
+	int[] toCanonical(int[] cells) {
+		int[] out = new int[cells.length];
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				out[i * size + j] = relabel[cells[index(i, j)]];
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Maps a board in canonical orientation back to the original one, into
+	 * out.
+	 */
+	void fromCanonical(int[] canonical, int[] out) {
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				out[index(i, j)] = inverse[canonical[i * size + j]];
+			}
+		}
+	}
+
+	// Original cell shown at canonical (i, j)
+	private int index(int i, int j) {
+		return transposed ? colOrder[j] * size + rowOrder[i] : rowOrder[i] * size + colOrder[j];
+	}
+
+	// Lexicographic minimum over the candidate orderings of both orientations
+	private static final class Search {
+		final int size;
+		final int boxSize;
+		int[] best;
+		int[] bestRelabel;
+		int[] bestRows;
+		int[] bestCols;
+		boolean bestTransposed;
+
+		private int[] candidate;
+		private final int[] labels;
+
+		Search(int size) {
+			this.size = size;
+			boxSize = (int) Math.sqrt(size);
+			candidate = new int[size * size];
+			labels = new int[size + 1];
+		}
+
+		void run(int[] grid, boolean transposed) {
+			int[] transposedGrid = new int[grid.length];
+			for (int row = 0; row < size; row++) {
+				for (int col = 0; col < size; col++) {
+					transposedGrid[col * size + row] = grid[row * size + col];
+				}
+			}
+			List<int[]> rowOrders = orders(lineKeys(grid));
+			List<int[]> colOrders = orders(lineKeys(transposedGrid));
+			for (int[] rows : rowOrders) {
+				for (int[] cols : colOrders) {
+					if (evaluate(grid, rows, cols)) {
+						bestRows = rows;
+						bestCols = cols;
+						bestTransposed = transposed;
+					}
+				}
+			}
+		}
+
+		// Relabels grid under (rows, cols) into candidate and keeps it if it is
+		// the smallest so far, giving up as soon as it compares greater
+		private boolean evaluate(int[] grid, int[] rows, int[] cols) {
+			Arrays.fill(labels, 0);
+			int next = 1;
+			boolean smaller = best == null;
+			for (int i = 0, k = 0; i < size; i++) {
+				int base = rows[i] * size;
+				for (int j = 0; j < size; j++, k++) {
+					int value = grid[base + cols[j]];
+					if (value != 0) {
+						if (labels[value] == 0) {
+							labels[value] = next++;
+						}
+						value = labels[value];
+					}
+					if (!smaller) {
+						if (value > best[k]) {
+							return false;
+						}
+						smaller = value < best[k];
+					}
+					candidate[k] = value;
+				}
+			}
+			if (!smaller) {
+				return false;
+			}
+			int[] swap = best;
+			best = candidate;
+			candidate = swap == null ? new int[size * size] : swap;
+			bestRelabel = labels.clone();
+			return true;
+		}
+
+		// Per row: givens, sorted givens per stack and givens in the crossing
+		// columns. None of these change under the symmetries that keep rows
+		// rows.
+		private long[] lineKeys(int[] grid) {
+			int[] colGivens = new int[size];
+			for (int cell = 0; cell < grid.length; cell++) {
+				if (grid[cell] != 0) {
+					colGivens[cell % size]++;
+				}
+			}
+			long[] keys = new long[size];
+			int[] stacks = new int[boxSize];
+			for (int row = 0; row < size; row++) {
+				Arrays.fill(stacks, 0);
+				int givens = 0;
+				int crossing = 0;
+				for (int col = 0; col < size; col++) {
+					if (grid[row * size + col] != 0) {
+						givens++;
+						crossing += colGivens[col];
+						stacks[col / boxSize]++;
+					}
+				}
+				Arrays.sort(stacks);
+				long stackKey = 0;
+				for (int count : stacks) {
+					stackKey = stackKey * (boxSize + 1) + count;
+				}
+				keys[row] = (long) givens << 40 | stackKey << 20 | crossing;
+			}
+			return keys;
+		}
+
+		// Line orders that sort bands and the lines in each band by key,
+		// permuting tied bands and tied lines in every possible way
+		private List<int[]> orders(final long[] keys) {
+			Integer[] bands = new Integer[boxSize];
+			final long[][] bandKeys = new long[boxSize][];
+			List<List<int[]>> inBand = new ArrayList<List<int[]>>();
+			for (int band = 0; band < boxSize; band++) {
+				Integer[] lines = new Integer[boxSize];
+				for (int k = 0; k < boxSize; k++) {
+					lines[k] = band * boxSize + k;
+				}
+				Arrays.sort(lines, new Comparator<Integer>() {
+					@Override
+					public int compare(Integer a, Integer b) {
+						return Long.compare(keys[a], keys[b]);
+					}
+				});
+				long[] lineKeys = new long[boxSize];
+				for (int k = 0; k < boxSize; k++) {
+					lineKeys[k] = keys[lines[k]];
+				}
+				bandKeys[band] = lineKeys;
+				inBand.add(permutations(lines, lineKeys));
+				bands[band] = band;
+			}
+			Arrays.sort(bands, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return Search.compare(bandKeys[a], bandKeys[b]);
+				}
+			});
+			long[] bandOrderKeys = new long[boxSize];
+			for (int k = 1; k < boxSize; k++) {
+				bandOrderKeys[k] = compare(bandKeys[bands[k - 1]], bandKeys[bands[k]]) == 0 ? bandOrderKeys[k - 1]
+						: bandOrderKeys[k - 1] + 1;
+			}
+			List<int[]> orders = new ArrayList<int[]>();
+			for (int[] bandOrder : permutations(bands, bandOrderKeys)) {
+				combine(bandOrder, inBand, 0, new int[size], orders);
+				if (orders.size() >= MAX_ORDERS) {
+					break;
+				}
+			}
+			return orders;
+		}
+
+		private void combine(int[] bandOrder, List<List<int[]>> inBand, int slot, int[] order, List<int[]> out) {
+			if (slot == boxSize) {
+				out.add(order.clone());
+				return;
+			}
+			for (int[] lines : inBand.get(bandOrder[slot])) {
+				System.arraycopy(lines, 0, order, slot * boxSize, boxSize);
+				combine(bandOrder, inBand, slot + 1, order, out);
+				if (out.size() >= MAX_ORDERS) {
+					return;
+				}
+			}
+		}
+
+		private static int compare(long[] a, long[] b) {
+			for (int k = 0; k < a.length; k++) {
+				if (a[k] != b[k]) {
+					return Long.compare(a[k], b[k]);
+				}
+			}
+			return 0;
+		}
+
+		// Orderings of items (sorted by keys) that only permute runs of equal
+		// keys, at most MAX_ORDERS of them
+		private static List<int[]> permutations(Integer[] items, long[] keys) {
+			int[] base = new int[items.length];
+			int[] runEnd = new int[items.length];
+			for (int k = items.length - 1; k >= 0; k--) {
+				base[k] = items[k];
+				runEnd[k] = k + 1 < items.length && keys[k + 1] == keys[k] ? runEnd[k + 1] : k + 1;
+			}
+			List<int[]> out = new ArrayList<int[]>();
+			permute(base, runEnd, 0, out);
+			return out;
+		}
+
+		private static void permute(int[] order, int[] runEnd, int position, List<int[]> out) {
+			if (position == order.length) {
+				out.add(order.clone());
+				return;
+			}
+			for (int k = position; k < runEnd[position] && out.size() < MAX_ORDERS; k++) {
+				int swap = order[position];
+				order[position] = order[k];
+				order[k] = swap;
+				permute(order, runEnd, position + 1, out);
+				order[k] = order[position];
+				order[position] = swap;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,531 @@
+package sudoku;
+
+import java.util.Arrays;
+
+/**
+ * Small conflict-driven clause learning SAT solver: two watched literals,
+ * VSIDS decisions with phase saving, first-UIP clause learning, Luby
+ * restarts and periodic deletion of inactive learnt clauses. All clauses
+ * live in one flat int array addressed by clause index.
+ * 
+ * Variables are numbered from 0. A literal is 2 * var for the positive and
+ * 2 * var + 1 for the negative form, see lit().
+ */
+final class CdclSolver {
+
+	private static final double VAR_DECAY = 0.95;
+	private static final double CLAUSE_DECAY = 0.999;
+	private static final int RESTART_BASE = 100;
+
+	private final int vars;
+
+	// Clause literals, clause c occupies lits[start[c] .. start[c] + size[c]).
+	// Clauses are laid out in index order; reduceLearnts closes the gaps.
+	private int[] lits = new int[1 << 12];
+	private int litsSize;
+	private int[] start = new int[1 << 10];
+	private int[] size = new int[1 << 10];
+	private boolean[] learnt = new boolean[1 << 10];
+	private double[] clauseActivity = new double[1 << 10];
+	private int clauses;
+	private int learnts;
+	private double clauseInc = 1;
+
+	private final int[][] watches;
+	private final int[] watchCount;
+
+	// 1 true, -1 false, 0 unassigned
+	private final byte[] assigns;
+	private final int[] level;
+	private final int[] reason;
+	private final boolean[] phase;
+	private final int[] trail;
+	private int trailSize;
+	private int qhead;
+	private final int[] trailLim;
+	private int decisionLevel;
+
+	private final double[] activity;
+	private double varInc = 1;
+	private final int[] heap;
+	private final int[] heapIndex;
+	private int heapSize;
+
+	private final boolean[] seen;
+	private final int[] learntBuffer;
+
+	private boolean ok = true;
+
+	/**
+	 * Decisions count as nodes at their decision level, conflicts as
+	 * backtracks and every enqueued literal as a propagation.
+	 */
+	final SolverStats stats = new SolverStats();
+
+	CdclSolver(int vars) {
+		this.vars = vars;
+		watches = new int[2 * vars][];
+		watchCount = new int[2 * vars];
+		for (int l = 0; l < 2 * vars; l++) {
+			watches[l] = new int[4];
+		}
+		assigns = new byte[vars];
+		level = new int[vars];
+		reason = new int[vars];
+		phase = new boolean[vars];
+		trail = new int[vars];
+		trailLim = new int[vars + 1];
+		activity = new double[vars];
+		heap = new int[vars];
+		heapIndex = new int[vars];
+		seen = new boolean[vars];
+		learntBuffer = new int[vars + 1];
+		Arrays.fill(reason, -1);
+		Arrays.fill(phase, true);
+		stats.reset();
+		for (int v = 0; v < vars; v++) {
+			heapIndex[v] = -1;
+			heapInsert(v);
+		}
+	}
+
+	static int lit(int var, boolean positive) {
+		return positive ? 2 * var : 2 * var + 1;
+	}
+
+	/**
+	 * Adds a problem clause. Must be called before solve. Returns false once
+	 * the clauses added so far are known to be unsatisfiable.
+	 */
+	boolean addClause(int... clause) {
+		if (!ok) {
+			return false;
+		}
+		int n = 0;
+		int[] kept = new int[clause.length];
+		for (int l : clause) {
+			int value = value(l);
+			if (value == 1) {
+				return true;
+			}
+			if (value == 0) {
+				kept[n++] = l;
+			}
+		}
+		if (n == 0) {
+			ok = false;
+		} else if (n == 1) {
+			enqueue(kept[0], -1);
+			ok = propagate() < 0;
+		} else {
+			attach(newClause(kept, n, false));
+		}
+		return ok;
+	}
+
+	boolean value(int var, boolean positive) {
+		return assigns[var] == (positive ? 1 : -1);
+	}
+
+	/**
+	 * Returns true with a model in place if the clauses are satisfiable.
+	 */
+	boolean solve() {
+		boolean solved = ok && propagate() < 0 && restarts();
+		stats.finish(solved);
+		return solved;
+	}
+
+	private boolean restarts() {
+		double maxLearnts = Math.max(clauses / 3.0, 1000);
+		for (int restart = 1;; restart++) {
+			int result = search(luby(restart) * RESTART_BASE, (int) maxLearnts);
+			if (result != 0) {
+				return result > 0;
+			}
+			maxLearnts *= 1.05;
+		}
+	}
+
+	// 1 = satisfiable, -1 = unsatisfiable, 0 = restart
+	private int search(long conflictBudget, int maxLearnts) {
+		long conflictCount = 0;
+		while (true) {
+			int conflict = propagate();
+			if (conflict >= 0) {
+				stats.backtracks++;
+				conflictCount++;
+				if (decisionLevel == 0) {
+					return -1;
+				}
+				int length = analyze(conflict);
+				int backtrackLevel = 0;
+				if (length > 1) {
+					int max = 1;
+					for (int k = 2; k < length; k++) {
+						if (level[learntBuffer[k] >> 1] > level[learntBuffer[max] >> 1]) {
+							max = k;
+						}
+					}
+					int temp = learntBuffer[1];
+					learntBuffer[1] = learntBuffer[max];
+					learntBuffer[max] = temp;
+					backtrackLevel = level[learntBuffer[1] >> 1];
+				}
+				backtrack(backtrackLevel);
+				if (length == 1) {
+					enqueue(learntBuffer[0], -1);
+				} else {
+					int c = newClause(learntBuffer, length, true);
+					attach(c);
+					bumpClause(c);
+					enqueue(learntBuffer[0], c);
+				}
+				varInc /= VAR_DECAY;
+				clauseInc /= CLAUSE_DECAY;
+			} else {
+				if (conflictCount >= conflictBudget) {
+					backtrack(0);
+					return 0;
+				}
+				if (learnts - trailSize >= maxLearnts) {
+					reduceLearnts();
+				}
+				int var = pickBranchVar();
+				if (var < 0) {
+					return 1;
+				}
+				trailLim[decisionLevel++] = trailSize;
+				stats.node(decisionLevel);
+				enqueue(lit(var, phase[var]), -1);
+			}
+		}
+	}
+
+	// Index of a conflicting clause, or -1
+	private int propagate() {
+		while (qhead < trailSize) {
+			int falseLit = trail[qhead++] ^ 1;
+			int[] list = watches[falseLit];
+			int n = watchCount[falseLit];
+			int i = 0;
+			int j = 0;
+			while (i < n) {
+				int c = list[i++];
+				int s = start[c];
+				if (lits[s] == falseLit) {
+					lits[s] = lits[s + 1];
+					lits[s + 1] = falseLit;
+				}
+				int first = lits[s];
+				if (value(first) == 1) {
+					list[j++] = c;
+					continue;
+				}
+				boolean moved = false;
+				for (int k = 2; k < size[c]; k++) {
+					if (value(lits[s + k]) != -1) {
+						lits[s + 1] = lits[s + k];
+						lits[s + k] = falseLit;
+						watch(lits[s + 1], c);
+						moved = true;
+						break;
+					}
+				}
+				if (moved) {
+					continue;
+				}
+				list[j++] = c;
+				if (value(first) == -1) {
+					while (i < n) {
+						list[j++] = list[i++];
+					}
+					watchCount[falseLit] = j;
+					qhead = trailSize;
+					return c;
+				}
+				enqueue(first, c);
+			}
+			watchCount[falseLit] = j;
+		}
+		return -1;
+	}
+
+	// First-UIP learning into learntBuffer, asserting literal first. Returns
+	// the clause length.
+	private int analyze(int conflict) {
+		int pathCount = 0;
+		int p = -1;
+		int index = trailSize - 1;
+		int length = 1;
+		do {
+			if (learnt[conflict]) {
+				bumpClause(conflict);
+			}
+			int s = start[conflict];
+			for (int k = p == -1 ? 0 : 1; k < size[conflict]; k++) {
+				int q = lits[s + k];
+				int v = q >> 1;
+				if (!seen[v] && level[v] > 0) {
+					bumpVar(v);
+					seen[v] = true;
+					if (level[v] >= decisionLevel) {
+						pathCount++;
+					} else {
+						learntBuffer[length++] = q;
+					}
+				}
+			}
+			while (!seen[trail[index--] >> 1]) {
+			}
+			p = trail[index + 1];
+			conflict = reason[p >> 1];
+			seen[p >> 1] = false;
+			pathCount--;
+		} while (pathCount > 0);
+		learntBuffer[0] = p ^ 1;
+		for (int k = 1; k < length; k++) {
+			seen[learntBuffer[k] >> 1] = false;
+		}
+		return length;
+	}
+
+	private void backtrack(int target) {
+		if (decisionLevel <= target) {
+			return;
+		}
+		for (int t = trailSize - 1; t >= trailLim[target]; t--) {
+			int v = trail[t] >> 1;
+			phase[v] = assigns[v] == 1;
+			assigns[v] = 0;
+			reason[v] = -1;
+			if (heapIndex[v] < 0) {
+				heapInsert(v);
+			}
+		}
+		trailSize = trailLim[target];
+		qhead = trailSize;
+		decisionLevel = target;
+	}
+
+	private void enqueue(int l, int from) {
+		int v = l >> 1;
+		assigns[v] = (byte) ((l & 1) == 0 ? 1 : -1);
+		level[v] = decisionLevel;
+		reason[v] = from;
+		trail[trailSize++] = l;
+		stats.propagations++;
+	}
+
+	private int value(int l) {
+		int a = assigns[l >> 1];
+		return (l & 1) == 0 ? a : -a;
+	}
+
+	private int pickBranchVar() {
+		while (heapSize > 0) {
+			int v = heapRemoveMax();
+			if (assigns[v] == 0) {
+				return v;
+			}
+		}
+		return -1;
+	}
+
+	private int newClause(int[] clause, int n, boolean isLearnt) {
+		if (clauses == start.length) {
+			int capacity = clauses * 2;
+			start = Arrays.copyOf(start, capacity);
+			size = Arrays.copyOf(size, capacity);
+			learnt = Arrays.copyOf(learnt, capacity);
+			clauseActivity = Arrays.copyOf(clauseActivity, capacity);
+		}
+		if (litsSize + n > lits.length) {
+			lits = Arrays.copyOf(lits, Math.max(lits.length * 2, litsSize + n));
+		}
+		int c = clauses++;
+		start[c] = litsSize;
+		size[c] = n;
+		learnt[c] = isLearnt;
+		clauseActivity[c] = 0;
+		System.arraycopy(clause, 0, lits, litsSize, n);
+		litsSize += n;
+		if (isLearnt) {
+			learnts++;
+		}
+		return c;
+	}
+
+	private void attach(int c) {
+		watch(lits[start[c]], c);
+		watch(lits[start[c] + 1], c);
+	}
+
+	private void watch(int l, int c) {
+		if (watchCount[l] == watches[l].length) {
+			watches[l] = Arrays.copyOf(watches[l], watchCount[l] * 2);
+		}
+		watches[l][watchCount[l]++] = c;
+	}
+
+	// Deletes the less active half of the learnt clauses that are longer than
+	// two literals and not the reason for a current assignment
+	private void reduceLearnts() {
+		int[] candidates = new int[learnts];
+		int n = 0;
+		for (int c = 0; c < clauses; c++) {
+			if (learnt[c] && size[c] > 2 && reason[lits[start[c]] >> 1] != c) {
+				candidates[n++] = c;
+			}
+		}
+		double[] scores = new double[n];
+		for (int i = 0; i < n; i++) {
+			scores[i] = clauseActivity[candidates[i]];
+		}
+		Arrays.sort(scores);
+		double median = n > 0 ? scores[n / 2] : 0;
+		boolean[] removed = new boolean[clauses];
+		for (int i = 0; i < n; i++) {
+			if (clauseActivity[candidates[i]] < median) {
+				removed[candidates[i]] = true;
+				learnts--;
+			}
+		}
+		compact(removed);
+	}
+
+	// Drops the removed clauses and slides the rest down over them, in lits
+	// as well as in the per-clause arrays, so the arena only holds live
+	// clauses. Clause indices change, so reasons and watch lists are
+	// renumbered, and watches of removed clauses go with them.
+	private void compact(boolean[] removed) {
+		int[] moved = new int[clauses];
+		int kept = 0;
+		int keptLits = 0;
+		for (int c = 0; c < clauses; c++) {
+			if (removed[c]) {
+				moved[c] = -1;
+				continue;
+			}
+			System.arraycopy(lits, start[c], lits, keptLits, size[c]);
+			start[kept] = keptLits;
+			size[kept] = size[c];
+			learnt[kept] = learnt[c];
+			clauseActivity[kept] = clauseActivity[c];
+			keptLits += size[c];
+			moved[c] = kept++;
+		}
+		clauses = kept;
+		litsSize = keptLits;
+		for (int v = 0; v < vars; v++) {
+			if (reason[v] >= 0) {
+				reason[v] = moved[reason[v]];
+			}
+		}
+		for (int l = 0; l < 2 * vars; l++) {
+			int[] list = watches[l];
+			int j = 0;
+			for (int i = 0; i < watchCount[l]; i++) {
+				int c = moved[list[i]];
+				if (c >= 0) {
+					list[j++] = c;
+				}
+			}
+			watchCount[l] = j;
+		}
+	}
+
+	private void bumpVar(int v) {
+		activity[v] += varInc;
+		if (activity[v] > 1e100) {
+			for (int u = 0; u < vars; u++) {
+				activity[u] *= 1e-100;
+			}
+			varInc *= 1e-100;
+		}
+		if (heapIndex[v] >= 0) {
+			heapUp(heapIndex[v]);
+		}
+	}
+
+	private void bumpClause(int c) {
+		clauseActivity[c] += clauseInc;
+		if (clauseActivity[c] > 1e20) {
+			for (int d = 0; d < clauses; d++) {
+				clauseActivity[d] *= 1e-20;
+			}
+			clauseInc *= 1e-20;
+		}
+	}
+
+	// Luby sequence 1 1 2 1 1 2 4 1 1 2 1 1 2 4 8 ...
+	static long luby(int i) {
+		int k = 1;
+		while ((1L << k) - 1 < i) {
+			k++;
+		}
+		while (i != (1L << k) - 1) {
+			i -= (1 << (k - 1)) - 1;
+			k = 1;
+			while ((1L << k) - 1 < i) {
+				k++;
+			}
+		}
+		return 1L << (k - 1);
+	}
+
+	private void heapInsert(int v) {
+		heap[heapSize] = v;
+		heapIndex[v] = heapSize;
+		heapUp(heapSize++);
+	}
+
+	private int heapRemoveMax() {
+		int top = heap[0];
+		heapIndex[top] = -1;
+		heapSize--;
+		if (heapSize > 0) {
+			heap[0] = heap[heapSize];
+			heapIndex[heap[0]] = 0;
+			heapDown(0);
+		}
+		return top;
+	}
+
+	private void heapUp(int i) {
+		int v = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (activity[heap[parent]] >= activity[v]) {
+				break;
+			}
+			heap[i] = heap[parent];
+			heapIndex[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = v;
+		heapIndex[v] = i;
+	}
+
+	private void heapDown(int i) {
+		int v = heap[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && activity[heap[child + 1]] > activity[heap[child]]) {
+				child++;
+			}
+			if (activity[heap[child]] <= activity[v]) {
+				break;
+			}
+			heap[i] = heap[child];
+			heapIndex[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = v;
+		heapIndex[v] = i;
+	}
+
+}
@@ -0,0 +1,158 @@
+package sudoku;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Solves the same puzzles with one strategy from several threads at once
+ * and checks every result against a single-threaded solve: a solved board
+ * must keep the givens and fill every unit with distinct digits, an
+ * unsolved one must be unsolvable on its own too, and the SolverStats of
+ * the solve must agree with it and be what getStats returns on the same
+ * thread. Catches solver state that is shared between solves. Prints one
+ * line per (corpus, strategy) pair and exits with status 1 if any result
+ * was wrong.
+ * 
+ * Usage: ConcurrencyCheck [-s STRATEGY,...] [-t threads] [-r rounds]
+ * [puzzles.txt ...]
+ */
+public class ConcurrencyCheck {
+
+	// STATIC, MRV and ITERATIVE are only checked on 9x9 corpora unless asked
+	// for by name, as in SudokuBenchmark
+	private static final int NAIVE_MAX_SIZE = 9;
+
+	public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+		List<Sudoku.Strategy> strategies = new ArrayList<Sudoku.Strategy>(Arrays.asList(Sudoku.Strategy.values()));
+		boolean explicitStrategies = false;
+		int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+		int rounds = 3;
+		List<String> files = new ArrayList<String>();
+		for (int a = 0; a < args.length; a++) {
+			if (args[a].equals("-s") && a + 1 < args.length) {
+				strategies.clear();
+				for (String name : args[++a].split(",")) {
+					strategies.add(Sudoku.Strategy.valueOf(name.toUpperCase()));
+				}
+				explicitStrategies = true;
+			} else if (args[a].equals("-t") && a + 1 < args.length) {
+				threads = Integer.parseInt(args[++a]);
+			} else if (args[a].equals("-r") && a + 1 < args.length) {
+				rounds = Integer.parseInt(args[++a]);
+			} else {
+				files.add(args[a]);
+			}
+		}
+		if (files.isEmpty()) {
+			files = SudokuBenchmark.corpus(new File("."));
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		int failed = 0;
+		try {
+			for (String file : files) {
+				List<int[][]> puzzles = SudokuBenchmark.load(file);
+				if (puzzles.isEmpty()) {
+					continue;
+				}
+				for (Sudoku.Strategy strategy : strategies) {
+					if (!explicitStrategies && puzzles.get(0).length > NAIVE_MAX_SIZE
+							&& (strategy == Sudoku.Strategy.STATIC || strategy == Sudoku.Strategy.MRV
+									|| strategy == Sudoku.Strategy.ITERATIVE)) {
+						continue;
+					}
+					int wrong = check(pool, threads, rounds, puzzles, strategy);
+					System.out.printf("%-28s %-10s %6d solves %6d wrong%n", file, strategy,
+							threads * rounds * puzzles.size(), wrong);
+					failed += wrong;
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+		if (failed > 0) {
+			System.exit(1);
+		}
+	}
+
+	// Number of wrong results over rounds passes of all threads through puzzles
+	private static int check(ExecutorService pool, int threads, int rounds, final List<int[][]> puzzles,
+			final Sudoku.Strategy strategy) throws InterruptedException, ExecutionException {
+		final boolean[] solvable = new boolean[puzzles.size()];
+		for (int p = 0; p < solvable.length; p++) {
+			solvable[p] = Sudoku.solve(copy(puzzles.get(p)), strategy);
+		}
+		List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+		for (int t = 0; t < threads; t++) {
+			final int offset = t;
+			for (int r = 0; r < rounds; r++) {
+				results.add(pool.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() {
+						int wrong = 0;
+						// Each thread starts at a different puzzle, so the
+						// solves running at the same time differ
+						for (int i = 0; i < puzzles.size(); i++) {
+							int p = (i + offset) % puzzles.size();
+							int[][] vals = copy(puzzles.get(p));
+							SolverStats stats = Sudoku.solveWithStats(vals, strategy);
+							boolean solved = stats.isSolved();
+							if (solved != solvable[p] || (solved && !isSolution(puzzles.get(p), vals))
+									|| Sudoku.getStats() != stats) {
+								wrong++;
+							}
+						}
+						return wrong;
+					}
+				}));
+			}
+		}
+		int wrong = 0;
+		for (Future<Integer> result : results) {
+			wrong += result.get();
+		}
+		return wrong;
+	}
+
+	private static int[][] copy(int[][] puzzle) {
+		int[][] vals = new int[puzzle.length][];
+		for (int i = 0; i < puzzle.length; i++) {
+			vals[i] = puzzle[i].clone();
+		}
+		return vals;
+	}
+
+	// True if vals keeps the givens of puzzle and every unit holds each digit
+	private static boolean isSolution(int[][] puzzle, int[][] vals) {
+		Geometry geometry = Geometry.forSize(puzzle.length);
+		for (int cell = 0; cell < geometry.cells; cell++) {
+			int given = puzzle[geometry.rowOf[cell]][geometry.colOf[cell]];
+			if (given != 0 && given != vals[geometry.rowOf[cell]][geometry.colOf[cell]]) {
+				return false;
+			}
+		}
+		for (int[] unit : geometry.units) {
+			long used = 0;
+			for (int cell : unit) {
+				int value = vals[geometry.rowOf[cell]][geometry.colOf[cell]];
+				if (value < 1 || value > geometry.size) {
+					return false;
+				}
+				used |= 1L << value;
+			}
+			if (used != geometry.fullMask) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
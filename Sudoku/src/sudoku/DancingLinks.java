@@ -0,0 +1,221 @@
+package sudoku;
+
+import java.util.Arrays;
+
+/**
+ * Knuth's Algorithm X with Dancing Links over the exact-cover form of an
+ * NxN board. Columns are the four constraint families (cell, row-digit,
+ * column-digit, box-digit) and there is one row per (cell, digit) pair.
+ * All links live in preallocated int arrays indexed by node number, and the
+ * matrix is restored after every solve so one instance can be reused for
+ * any number of puzzles of the same size.
+ */
+final class DancingLinks {
+
+	private static final int ROOT = 0;
+
+	private final Geometry geometry;
+	private final int columns;
+
+	private final int[] left;
+	private final int[] right;
+	private final int[] up;
+	private final int[] down;
+	private final int[] column;
+	private final int[] rowOf;
+	private final int[] size;
+
+	private final int[] solution;
+	private final int[] givens;
+	private final int[] result;
+
+	final SolverStats stats = new SolverStats();
+
+	DancingLinks(Geometry geometry) {
+		this.geometry = geometry;
+		int n = geometry.size;
+		int cells = geometry.cells;
+		columns = 4 * cells;
+		int rows = cells * n;
+		int total = 1 + columns + 4 * rows;
+
+		left = new int[total];
+		right = new int[total];
+		up = new int[total];
+		down = new int[total];
+		column = new int[total];
+		rowOf = new int[total];
+		size = new int[1 + columns];
+		solution = new int[cells];
+		givens = new int[cells];
+		result = new int[cells];
+
+		for (int c = 0; c <= columns; c++) {
+			left[c] = c == 0 ? columns : c - 1;
+			right[c] = c == columns ? 0 : c + 1;
+			up[c] = c;
+			down[c] = c;
+			column[c] = c;
+		}
+
+		int node = columns + 1;
+		for (int cell = 0; cell < cells; cell++) {
+			int row = geometry.rowOf[cell];
+			int col = geometry.colOf[cell];
+			int box = geometry.boxOf[cell];
+			for (int d = 0; d < n; d++) {
+				int r = cell * n + d;
+				int first = node;
+				node = append(node, first, r, 1 + cell);
+				node = append(node, first, r, 1 + cells + row * n + d);
+				node = append(node, first, r, 1 + 2 * cells + col * n + d);
+				node = append(node, first, r, 1 + 3 * cells + box * n + d);
+			}
+		}
+	}
+
+	// Links node at the bottom of column c and at the end of the row that
+	// starts at first.
+	private int append(int node, int first, int r, int c) {
+		column[node] = c;
+		rowOf[node] = r;
+		up[node] = up[c];
+		down[node] = c;
+		down[up[c]] = node;
+		up[c] = node;
+		size[c]++;
+		left[node] = node == first ? node : left[first];
+		right[node] = first;
+		right[left[node]] = node;
+		left[first] = node;
+		return node + 1;
+	}
+
+	/**
+	 * Solves vals in place. Returns false if the givens conflict or there is
+	 * no solution; vals is left untouched in that case.
+	 */
+	boolean solve(int[][] vals) {
+		stats.reset();
+		int n = geometry.size;
+		int placed = 0;
+		boolean consistent = true;
+		for (int cell = 0; cell < geometry.cells && consistent; cell++) {
+			int value = vals[geometry.rowOf[cell]][geometry.colOf[cell]];
+			if (value == 0) {
+				continue;
+			}
+			int first = columns + 1 + 4 * (cell * n + value - 1);
+			int j = first;
+			do {
+				if (right[left[column[j]]] != column[j]) {
+					consistent = false;
+				}
+				j = right[j];
+			} while (j != first);
+			if (consistent) {
+				select(first);
+				givens[placed++] = first;
+			}
+		}
+
+		boolean solved = consistent && search(0);
+		stats.finish(solved);
+
+		while (placed > 0) {
+			deselect(givens[--placed]);
+		}
+		if (solved) {
+			for (int cell = 0; cell < geometry.cells; cell++) {
+				if (result[cell] != 0) {
+					vals[geometry.rowOf[cell]][geometry.colOf[cell]] = result[cell];
+				}
+			}
+		}
+		return solved;
+	}
+
+	private boolean search(int k) {
+		if (right[ROOT] == ROOT) {
+			Arrays.fill(result, 0);
+			for (int i = 0; i < k; i++) {
+				int r = rowOf[solution[i]];
+				result[r / geometry.size] = r % geometry.size + 1;
+			}
+			return true;
+		}
+		stats.node(k);
+
+		int c = right[ROOT];
+		for (int j = right[c]; j != ROOT; j = right[j]) {
+			if (size[j] < size[c]) {
+				c = j;
+			}
+		}
+		if (size[c] == 0) {
+			return false;
+		}
+
+		boolean found = false;
+		cover(c);
+		for (int r = down[c]; r != c && !found; r = down[r]) {
+			solution[k] = r;
+			for (int j = right[r]; j != r; j = right[j]) {
+				cover(column[j]);
+			}
+			found = search(k + 1);
+			for (int j = left[r]; j != r; j = left[j]) {
+				uncover(column[j]);
+			}
+			if (!found) {
+				stats.backtracks++;
+			}
+		}
+		uncover(c);
+		return found;
+	}
+
+	private void select(int first) {
+		int j = first;
+		do {
+			cover(column[j]);
+			j = right[j];
+		} while (j != first);
+	}
+
+	private void deselect(int first) {
+		int j = left[first];
+		while (true) {
+			uncover(column[j]);
+			if (j == first) {
+				break;
+			}
+			j = left[j];
+		}
+	}
+
+	private void cover(int c) {
+		right[left[c]] = right[c];
+		left[right[c]] = left[c];
+		for (int i = down[c]; i != c; i = down[i]) {
+			for (int j = right[i]; j != i; j = right[j]) {
+				down[up[j]] = down[j];
+				up[down[j]] = up[j];
+				size[column[j]]--;
+			}
+		}
+	}
+
+	private void uncover(int c) {
+		for (int i = up[c]; i != c; i = up[i]) {
+			for (int j = left[i]; j != i; j = left[j]) {
+				size[column[j]]++;
+				down[up[j]] = j;
+				up[down[j]] = j;
+			}
+		}
+		right[left[c]] = c;
+		left[right[c]] = c;
+	}
+
+}
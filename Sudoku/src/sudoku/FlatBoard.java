@@ -0,0 +1,211 @@
+package sudoku;
+
+import java.util.Arrays;
+
+/**
+ * Compact board for the static-order search: one byte per cell, one packed
+ * digit mask per row, column and box, and the per-size unit tables of
+ * Geometry. The search runs on a preallocated stack, so a board is reused
+ * from puzzle to puzzle without allocating. Not thread safe.
+ */
+final class FlatBoard {
+
+	final Geometry geometry;
+
+	// Digit per cell, 0 for empty
+	final byte[] cells;
+	// Digits used per unit, indexed like Geometry.units
+	private final long[] used;
+
+	// Empty cells in row-major order; stack frame d holds the untried digits
+	// of empty[d]
+	private final short[] empty;
+	private final long[] remaining;
+	private int emptyCount;
+
+	SolverStats stats = new SolverStats();
+
+	FlatBoard(Geometry geometry) {
+		this.geometry = geometry;
+		cells = new byte[geometry.cells];
+		used = new long[3 * geometry.size];
+		empty = new short[geometry.cells];
+		remaining = new long[geometry.cells];
+	}
+
+	/**
+	 * Clears the board and places the givens of vals. Returns false if they
+	 * conflict.
+	 */
+	boolean load(int[][] vals) {
+		clear();
+		int size = geometry.size;
+		for (int row = 0, cell = 0; row < size; row++) {
+			for (int col = 0; col < size; col++, cell++) {
+				if (!place(cell, vals[row][col])) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Same as load(int[][]) for a row-major flat board.
+	 */
+	boolean load(int[] givens) {
+		clear();
+		for (int cell = 0; cell < geometry.cells; cell++) {
+			if (!place(cell, givens[cell])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	void copyTo(int[][] vals) {
+		int size = geometry.size;
+		for (int row = 0, cell = 0; row < size; row++) {
+			for (int col = 0; col < size; col++, cell++) {
+				vals[row][col] = cells[cell];
+			}
+		}
+	}
+
+	/**
+	 * Fills the empty cells in row-major order, trying digits in increasing
+	 * order. Returns false if there is no solution; the board is then back
+	 * in its loaded state.
+	 */
+	boolean solve() {
+		stats.reset();
+		boolean solved = search();
+		stats.finish(solved);
+		return solved;
+	}
+
+	private boolean search() {
+		if (emptyCount == 0) {
+			return true;
+		}
+		int depth = 0;
+		remaining[0] = candidates(empty[0]);
+		stats.node(0);
+		while (depth >= 0) {
+			int cell = empty[depth];
+			if (cells[cell] != 0) {
+				unset(cell);
+				stats.backtracks++;
+			}
+			long left = remaining[depth];
+			if (left == 0) {
+				depth--;
+				continue;
+			}
+			long bit = Long.lowestOneBit(left);
+			remaining[depth] = left & ~bit;
+			set(cell, Long.numberOfTrailingZeros(bit));
+			if (++depth == emptyCount) {
+				return true;
+			}
+			remaining[depth] = candidates(empty[depth]);
+			stats.node(depth);
+		}
+		return false;
+	}
+
+	private void clear() {
+		Arrays.fill(cells, (byte) 0);
+		Arrays.fill(used, 0);
+		emptyCount = 0;
+	}
+
+	private boolean place(int cell, int digit) {
+		if (digit == 0) {
+			empty[emptyCount++] = (short) cell;
+			return true;
+		}
+		if ((candidates(cell) & (1L << digit)) == 0) {
+			return false;
+		}
+		set(cell, digit);
+		return true;
+	}
+
+	private long candidates(int cell) {
+		short[] unitsOf = geometry.unitsOf;
+		int k = 3 * cell;
+		return geometry.fullMask & ~(used[unitsOf[k]] | used[unitsOf[k + 1]] | used[unitsOf[k + 2]]);
+	}
+
+	private void set(int cell, int digit) {
+		short[] unitsOf = geometry.unitsOf;
+		int k = 3 * cell;
+		long bit = 1L << digit;
+		used[unitsOf[k]] |= bit;
+		used[unitsOf[k + 1]] |= bit;
+		used[unitsOf[k + 2]] |= bit;
+		cells[cell] = (byte) digit;
+	}
+
+	private void unset(int cell) {
+		short[] unitsOf = geometry.unitsOf;
+		int k = 3 * cell;
+		long bit = ~(1L << cells[cell]);
+		used[unitsOf[k]] &= bit;
+		used[unitsOf[k + 1]] &= bit;
+		used[unitsOf[k + 2]] &= bit;
+		cells[cell] = 0;
+	}
+
+	/**
+	 * Approximate heap bytes held by this board, not counting the Geometry
+	 * tables shared by all boards of its size.
+	 */
+	long footprintBytes() {
+		return footprintBytes(geometry);
+	}
+
+	static long footprintBytes(Geometry geometry) {
+		int cells = geometry.cells;
+		// Object header and seven fields
+		long board = align(12 + 6 * 4 + 4);
+		long arrays = arrayBytes(cells, 1) + arrayBytes(3 * geometry.size, 8) + arrayBytes(cells, 2)
+				+ arrayBytes(cells, 8);
+		// Seven longs, an int, a boolean and three references, plus the band arrays
+		long stats = align(12 + 7 * 8 + 4 + 1 + 3 * 4) + 2 * arrayBytes(SolverStats.BANDS, 8);
+		return board + arrays + stats;
+	}
+
+	// Header plus elements, assuming compressed oops and 8 byte alignment
+	static long arrayBytes(long length, int elementBytes) {
+		return align(16 + length * elementBytes);
+	}
+
+	private static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+
+	/**
+	 * Prints the footprint of one board per supported size, next to a
+	 * Propagator and to an int[][] board with a three-int object per empty
+	 * cell, the representation STATIC used before, for an empty board.
+	 * 
+	 * Usage: FlatBoard
+	 */
+	public static void main(String[] args) {
+		System.out.printf("%6s %14s %14s %18s%n", "size", "FlatBoard", "Propagator", "int[][]+objects");
+		for (int boxSize = 2; boxSize * boxSize <= 36; boxSize++) {
+			Geometry geometry = Geometry.forSize(boxSize * boxSize);
+			int size = geometry.size;
+			int cells = geometry.cells;
+			long propagator = align(12 + 10 * 4) + arrayBytes(cells, 4) + arrayBytes(cells, 8)
+					+ arrayBytes(4 * cells, 4) + arrayBytes(4 * cells, 8) + arrayBytes(cells + 1, 4);
+			long nested = arrayBytes(size, 4) + size * arrayBytes(size, 4) + cells * align(12 + 3 * 4)
+					+ align(12 + 2 * 4) + arrayBytes(cells, 4);
+			System.out.printf("%4dx%-2d %12d B %12d B %16d B%n", size, size, footprintBytes(geometry), propagator,
+					nested);
+		}
+	}
+
+}
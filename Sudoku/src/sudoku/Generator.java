@@ -0,0 +1,218 @@
+package sudoku;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates puzzles with a unique solution. A random complete grid is
+ * filled in first, then clues are removed in random order, each removal
+ * kept only if no other solution appears. Puzzles are graded by how much
+ * search the propagating solver needs and written to one file per grade,
+ * e.g. generated9Easy.txt, in the same format as the bundled puzzles.
+ * 
+ * Puzzle i is built from its own Random seeded with seed + i, so a corpus
+ * is reproducible whatever the number of threads.
+ * 
+ * Usage: Generator size count [threads] [seed] [prefix]
+ */
+public class Generator {
+
+	static final String[] GRADES = { "Easy", "Medium", "Hard" };
+
+	static final long CHECK_NODES = 500;
+
+	private final Geometry geometry;
+	private final Propagator board;
+	private final int[] order;
+
+	Generator(int size) {
+		geometry = Geometry.forSize(size);
+		board = new Propagator(geometry);
+		order = new int[geometry.cells];
+	}
+
+	/**
+	 * Returns a row-major puzzle with a unique solution.
+	 */
+	int[] generate(Random random) {
+		board.reset();
+		fill(random);
+		int[] puzzle = board.values.clone();
+
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		for (int i = order.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int temp = order[i];
+			order[i] = order[j];
+			order[j] = temp;
+		}
+		for (int cell : order) {
+			int value = puzzle[cell];
+			puzzle[cell] = 0;
+			if (!unique(puzzle, cell, value)) {
+				puzzle[cell] = value;
+			}
+		}
+		return puzzle;
+	}
+
+	/**
+	 * Index into GRADES: no search needed, little backtracking, or more.
+	 */
+	int grade(int[] puzzle) {
+		board.load(puzzle);
+		board.solve();
+		if (board.stats.nodes == 0) {
+			return 0;
+		}
+		return board.stats.backtracks <= geometry.size ? 1 : 2;
+	}
+
+	// Completes the board with digits tried in random order
+	private boolean fill(Random random) {
+		int cell = board.selectCell();
+		if (cell < 0) {
+			return true;
+		}
+		long remaining = board.domains[cell];
+		while (remaining != 0) {
+			long rest = remaining;
+			for (int skip = random.nextInt(Long.bitCount(remaining)); skip > 0; skip--) {
+				rest &= rest - 1;
+			}
+			long bit = Long.lowestOneBit(rest);
+			remaining &= ~bit;
+			int mark = board.mark();
+			if (board.assign(cell, Long.numberOfTrailingZeros(bit)) && fill(random)) {
+				return true;
+			}
+			board.undo(mark);
+		}
+		return false;
+	}
+
+	// puzzle, which has cell emptied, is still unique if the removed value is
+	// the only one that leads to a solution
+	private boolean unique(int[] puzzle, int cell, int value) {
+		board.nodeLimit = CHECK_NODES;
+		boolean other = board.load(puzzle) && board.exclude(cell, value) && board.solve();
+		boolean unique = !other && board.stats.nodes < CHECK_NODES;
+		board.nodeLimit = Long.MAX_VALUE;
+		return unique;
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 2) {
+			System.out.println("Usage: Generator size count [threads] [seed] [prefix]");
+			return;
+		}
+		final int size = Integer.parseInt(args[0]);
+		final int count = Integer.parseInt(args[1]);
+		final int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		final long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+		String prefix = args.length > 4 ? args[4] : "generated";
+
+		final int[][] puzzles = new int[count][];
+		final int[] grades = new int[count];
+		final long[] nanos = new long[count];
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<Void>> workers = new ArrayList<Future<Void>>();
+		long start = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			final int first = t;
+			workers.add(pool.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					Generator generator = new Generator(size);
+					for (int i = first; i < count; i += threads) {
+						long begin = System.nanoTime();
+						puzzles[i] = generator.generate(new Random(seed + i));
+						nanos[i] = System.nanoTime() - begin;
+						grades[i] = generator.grade(puzzles[i]);
+					}
+					return null;
+				}
+			}));
+		}
+		try {
+			for (Future<Void> worker : workers) {
+				worker.get();
+			}
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		int[] perGrade = new int[GRADES.length];
+		for (int g = 0; g < GRADES.length; g++) {
+			Writer writer = null;
+			for (int i = 0; i < count; i++) {
+				if (grades[i] != g) {
+					continue;
+				}
+				if (writer == null) {
+					writer = new BufferedWriter(new FileWriter(prefix + size + GRADES[g] + ".txt"));
+				}
+				write(writer, size, puzzles[i]);
+				perGrade[g]++;
+			}
+			if (writer != null) {
+				writer.close();
+			}
+		}
+
+		System.out.printf("Generated %d %dx%d puzzles in %.3f s (%.1f puzzles/sec, %d threads)%n", count, size, size,
+				elapsed / 1e9, count / (elapsed / 1e9), threads);
+		for (int g = 0; g < GRADES.length; g++) {
+			System.out.println(GRADES[g] + ": " + perGrade[g]);
+		}
+		printHistogram(nanos);
+	}
+
+	static void write(Writer writer, int size, int[] puzzle) throws IOException {
+		writer.write(Integer.toString(size));
+		writer.write('\n');
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				if (j != 0) {
+					writer.write(' ');
+				}
+				writer.write(Integer.toString(puzzle[i * size + j]));
+			}
+			writer.write('\n');
+		}
+	}
+
+	// Generation times in power-of-two microsecond buckets
+	private static void printHistogram(long[] nanos) {
+		int[] buckets = new int[40];
+		int highest = 0;
+		for (long n : nanos) {
+			int bucket = 64 - Long.numberOfLeadingZeros(Math.max(1, n / 1000));
+			buckets[bucket]++;
+			highest = Math.max(highest, bucket);
+		}
+		System.out.println("Generation time histogram:");
+		for (int b = 0; b <= highest; b++) {
+			if (buckets[b] > 0) {
+				System.out.printf("  < %8d us: %d%n", 1L << b, buckets[b]);
+			}
+		}
+	}
+
+}
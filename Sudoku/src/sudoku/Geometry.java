@@ -0,0 +1,86 @@
+package sudoku;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Precomputed index tables for an NxN board with sqrt(N)xsqrt(N) boxes.
+ * Cells are numbered row-major, units are the N rows, then the N columns,
+ * then the N boxes. One instance is shared per board size.
+ */
+final class Geometry {
+
+	private static final Map<Integer, Geometry> CACHE = new HashMap<Integer, Geometry>();
+
+	final int size;
+	final int boxSize;
+	final int cells;
+	final long fullMask;
+
+	final int[] rowOf;
+	final int[] colOf;
+	final int[] boxOf;
+	final int[][] peers;
+	final int[][] units;
+	// Row, column and box unit of each cell as indexes into units, packed
+	// three per cell for boards that keep one mask per unit
+	final short[] unitsOf;
+
+	private Geometry(int size) {
+		this.size = size;
+		this.boxSize = (int) Math.sqrt(size);
+		if (boxSize * boxSize != size || size > 63) {
+			throw new IllegalArgumentException("Unsupported board size: " + size);
+		}
+		this.cells = size * size;
+		// bit d stands for digit d, bit 0 is never used
+		this.fullMask = ((1L << size) - 1) << 1;
+
+		rowOf = new int[cells];
+		colOf = new int[cells];
+		boxOf = new int[cells];
+		units = new int[3 * size][size];
+		unitsOf = new short[3 * cells];
+		int[] fill = new int[3 * size];
+		for (int cell = 0; cell < cells; cell++) {
+			int row = cell / size;
+			int col = cell % size;
+			int box = (row / boxSize) * boxSize + col / boxSize;
+			rowOf[cell] = row;
+			colOf[cell] = col;
+			boxOf[cell] = box;
+			unitsOf[3 * cell] = (short) row;
+			unitsOf[3 * cell + 1] = (short) (size + col);
+			unitsOf[3 * cell + 2] = (short) (2 * size + box);
+			units[row][fill[row]++] = cell;
+			units[size + col][fill[size + col]++] = cell;
+			units[2 * size + box][fill[2 * size + box]++] = cell;
+		}
+
+		int peerCount = 3 * size - 2 * boxSize - 1;
+		peers = new int[cells][peerCount];
+		for (int cell = 0; cell < cells; cell++) {
+			int n = 0;
+			for (int other = 0; other < cells; other++) {
+				if (other != cell && (rowOf[other] == rowOf[cell] || colOf[other] == colOf[cell]
+						|| boxOf[other] == boxOf[cell])) {
+					peers[cell][n++] = other;
+				}
+			}
+		}
+	}
+
+	static synchronized Geometry forSize(int size) {
+		Geometry geometry = CACHE.get(size);
+		if (geometry == null) {
+			geometry = new Geometry(size);
+			CACHE.put(size, geometry);
+		}
+		return geometry;
+	}
+
+	int cell(int row, int col) {
+		return row * size + col;
+	}
+
+}
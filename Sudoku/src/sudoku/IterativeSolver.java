@@ -0,0 +1,167 @@
+package sudoku;
+
+/**
+ * Most-constrained-cell search without recursion. The path from the root is
+ * kept on a preallocated stack of (cell, untried candidates) frames, so the
+ * Java stack depth stays constant however many cells are empty, and a solve
+ * allocates nothing once the solver is built. A solver is reusable for any
+ * number of boards of its size but not thread safe.
+ */
+final class IterativeSolver {
+
+	private final Geometry geometry;
+
+	private final int[] values;
+	private final long[] rowMasks;
+	private final long[] colMasks;
+	private final long[] boxMasks;
+
+	// Empty cells are empty[0 .. emptyCount); a placed cell is swapped just
+	// past the end, so undoing placements in reverse order restores the list.
+	private final int[] empty;
+	private final int[] position;
+	private int emptyCount;
+
+	// Search stack, frame d branches on stackCell[d] with the digits in
+	// stackRemaining[d] still to try
+	private final int[] stackCell;
+	private final long[] stackRemaining;
+
+	final SolverStats stats = new SolverStats();
+
+	IterativeSolver(Geometry geometry) {
+		this.geometry = geometry;
+		values = new int[geometry.cells];
+		rowMasks = new long[geometry.size];
+		colMasks = new long[geometry.size];
+		boxMasks = new long[geometry.size];
+		empty = new int[geometry.cells];
+		position = new int[geometry.cells];
+		stackCell = new int[geometry.cells];
+		stackRemaining = new long[geometry.cells];
+	}
+
+	/**
+	 * Solves vals in place. Returns false if the givens conflict or there is
+	 * no solution.
+	 */
+	boolean solve(int[][] vals) {
+		stats.reset();
+		boolean solved = load(vals) && search();
+		if (solved) {
+			for (int cell = 0; cell < geometry.cells; cell++) {
+				vals[geometry.rowOf[cell]][geometry.colOf[cell]] = values[cell];
+			}
+		}
+		stats.finish(solved);
+		return solved;
+	}
+
+	private boolean load(int[][] vals) {
+		for (int i = 0; i < geometry.size; i++) {
+			rowMasks[i] = 0;
+			colMasks[i] = 0;
+			boxMasks[i] = 0;
+		}
+		emptyCount = 0;
+		for (int cell = 0; cell < geometry.cells; cell++) {
+			int value = vals[geometry.rowOf[cell]][geometry.colOf[cell]];
+			values[cell] = value;
+			if (value == 0) {
+				position[cell] = emptyCount;
+				empty[emptyCount++] = cell;
+				continue;
+			}
+			long bit = 1L << value;
+			if (((rowMasks[geometry.rowOf[cell]] | colMasks[geometry.colOf[cell]]
+					| boxMasks[geometry.boxOf[cell]]) & bit) != 0) {
+				return false;
+			}
+			rowMasks[geometry.rowOf[cell]] |= bit;
+			colMasks[geometry.colOf[cell]] |= bit;
+			boxMasks[geometry.boxOf[cell]] |= bit;
+		}
+		return true;
+	}
+
+	private boolean search() {
+		if (emptyCount == 0) {
+			return true;
+		}
+		int depth = 0;
+		push(depth, select());
+		while (depth >= 0) {
+			int cell = stackCell[depth];
+			if (values[cell] != 0) {
+				unplace(cell);
+				stats.backtracks++;
+			}
+			long remaining = stackRemaining[depth];
+			if (remaining == 0) {
+				depth--;
+				continue;
+			}
+			long bit = Long.lowestOneBit(remaining);
+			stackRemaining[depth] = remaining & ~bit;
+			place(cell, Long.numberOfTrailingZeros(bit));
+			if (emptyCount == 0) {
+				return true;
+			}
+			push(++depth, select());
+		}
+		return false;
+	}
+
+	private void push(int depth, int cell) {
+		stackCell[depth] = cell;
+		stackRemaining[depth] = candidates(cell);
+		stats.node(depth);
+	}
+
+	// Empty cell with the fewest candidates, stopping early at zero or one
+	private int select() {
+		int best = -1;
+		int bestCount = Integer.MAX_VALUE;
+		for (int i = 0; i < emptyCount; i++) {
+			int cell = empty[i];
+			int count = Long.bitCount(candidates(cell));
+			if (count < bestCount) {
+				best = cell;
+				bestCount = count;
+				if (count <= 1) {
+					break;
+				}
+			}
+		}
+		return best;
+	}
+
+	private long candidates(int cell) {
+		return geometry.fullMask & ~(rowMasks[geometry.rowOf[cell]] | colMasks[geometry.colOf[cell]]
+				| boxMasks[geometry.boxOf[cell]]);
+	}
+
+	private void place(int cell, int digit) {
+		long bit = 1L << digit;
+		values[cell] = digit;
+		rowMasks[geometry.rowOf[cell]] |= bit;
+		colMasks[geometry.colOf[cell]] |= bit;
+		boxMasks[geometry.boxOf[cell]] |= bit;
+		int last = empty[--emptyCount];
+		int at = position[cell];
+		empty[at] = last;
+		position[last] = at;
+		empty[emptyCount] = cell;
+		position[cell] = emptyCount;
+	}
+
+	private void unplace(int cell) {
+		long bit = ~(1L << values[cell]);
+		values[cell] = 0;
+		rowMasks[geometry.rowOf[cell]] &= bit;
+		colMasks[geometry.colOf[cell]] &= bit;
+		boxMasks[geometry.boxOf[cell]] &= bit;
+		emptyCount++;
+	}
+
+}
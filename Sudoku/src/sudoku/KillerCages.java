@@ -0,0 +1,153 @@
+package sudoku;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Killer sudoku cages: groups of cells whose digits are distinct and add up
+ * to a given sum. For every (sum, cage size) pair the digit sets that can
+ * make it are enumerated once and cached, so pruning a cage during search
+ * is a scan over its precomputed sets intersected with the cell candidate
+ * masks.
+ * 
+ * In an input file the cages follow the N*N grid values: first the number
+ * of cages, then for each cage its sum, its number of cells and that many
+ * 0-based "row col" pairs.
+ */
+final class KillerCages {
+
+	// (size, cage size, sum) -> digit masks, bit d set for digit d
+	private static final Map<Long, long[]> COMBINATIONS = new HashMap<Long, long[]>();
+
+	final int[][] cells;
+	final int[] sums;
+	private final long[][] combinations;
+
+	KillerCages(Geometry geometry, int[][] cells, int[] sums) {
+		this.cells = cells;
+		this.sums = sums;
+		combinations = new long[cells.length][];
+		boolean[] used = new boolean[geometry.cells];
+		for (int i = 0; i < cells.length; i++) {
+			for (int cell : cells[i]) {
+				if (cell < 0 || cell >= geometry.cells || used[cell]) {
+					throw new RuntimeException("Incorrect cage definition.");
+				}
+				used[cell] = true;
+			}
+			combinations[i] = combinations(geometry.size, cells[i].length, sums[i]);
+			if (combinations[i].length == 0) {
+				throw new RuntimeException("No digits add up to " + sums[i] + " in a cage of " + cells[i].length);
+			}
+		}
+	}
+
+	/**
+	 * Reads the cage section that follows the grid values in an input file.
+	 */
+	static KillerCages read(PuzzleReader input, Geometry geometry) throws IOException {
+		// Bounded reads, so a corrupt count cannot size a huge array
+		int count = input.nextInt(geometry.cells);
+		int[][] cells = new int[count][];
+		int[] sums = new int[count];
+		for (int i = 0; i < count; i++) {
+			sums[i] = input.nextInt(geometry.size * (geometry.size + 1) / 2);
+			cells[i] = new int[input.nextInt(geometry.size)];
+			for (int j = 0; j < cells[i].length; j++) {
+				int row = input.nextInt(geometry.size - 1);
+				int col = input.nextInt(geometry.size - 1);
+				cells[i][j] = geometry.cell(row, col);
+			}
+		}
+		return new KillerCages(geometry, cells, sums);
+	}
+
+	/**
+	 * All sets of distinct digits 1..n of the given size that add up to sum.
+	 */
+	static synchronized long[] combinations(int n, int size, int sum) {
+		Long key = ((long) n << 40) | ((long) size << 32) | sum;
+		long[] masks = COMBINATIONS.get(key);
+		if (masks == null) {
+			List<Long> found = new ArrayList<Long>();
+			enumerate(n, 1, size, sum, 0L, found);
+			masks = new long[found.size()];
+			for (int i = 0; i < masks.length; i++) {
+				masks[i] = found.get(i);
+			}
+			COMBINATIONS.put(key, masks);
+		}
+		return masks;
+	}
+
+	private static void enumerate(int n, int from, int size, int sum, long mask, List<Long> found) {
+		if (size == 0) {
+			if (sum == 0) {
+				found.add(mask);
+			}
+			return;
+		}
+		// smallest and largest sums still reachable with size digits >= from
+		int min = size * from + size * (size - 1) / 2;
+		int max = size * n - size * (size - 1) / 2;
+		if (sum < min || sum > max) {
+			return;
+		}
+		for (int d = from; d <= n && d <= sum; d++) {
+			enumerate(n, d + 1, size - 1, sum - d, mask | (1L << d), found);
+		}
+	}
+
+	/**
+	 * Restricts the unassigned cells of every cage to the digits of the
+	 * combinations still compatible with the board. Returns the number of
+	 * domains narrowed, or -1 if some cage cannot be completed.
+	 */
+	int prune(Propagator board) {
+		int narrowed = 0;
+		for (int i = 0; i < cells.length; i++) {
+			long placed = 0;
+			long available = 0;
+			int placedCount = 0;
+			for (int cell : cells[i]) {
+				if (board.values[cell] != 0) {
+					placed |= board.domains[cell];
+					placedCount++;
+				} else {
+					available |= board.domains[cell];
+				}
+			}
+			if (Long.bitCount(placed) != placedCount) {
+				return -1;
+			}
+			long allowed = 0;
+			boolean feasible = false;
+			for (long combination : combinations[i]) {
+				if ((combination & placed) == placed && (combination & ~placed & ~available) == 0) {
+					allowed |= combination;
+					feasible = true;
+				}
+			}
+			if (!feasible) {
+				return -1;
+			}
+			allowed &= ~placed;
+			for (int cell : cells[i]) {
+				if (board.values[cell] == 0) {
+					long domain = board.domains[cell];
+					if (!board.restrict(cell, domain & allowed)) {
+						return -1;
+					}
+					if (board.domains[cell] != domain) {
+						narrowed++;
+					}
+				}
+			}
+		}
+		return narrowed;
+	}
+
+}
@@ -0,0 +1,129 @@
+package sudoku;
+
+/**
+ * Recursive most-constrained-cell search: branches on the empty cell with
+ * the fewest candidates, preferring the one with more empty peers on ties.
+ * Digits used per row, column and box are kept as bitmasks, and the empty
+ * cells sit in a VariableQueue that is re-keyed only for the peers of the
+ * cell being placed or cleared. All of this belongs to the instance, which
+ * solves a single board, so concurrent solves never share search state.
+ */
+final class MrvSolver {
+
+	private final Geometry geometry;
+
+	// Digits already placed in each row, column and box. Bit d is set when
+	// digit d is used, so boards up to 36x36 still fit in a long.
+	private final long[] rowMasks;
+	private final long[] colMasks;
+	private final long[] boxMasks;
+
+	// Number of empty peers of each empty cell
+	private final int[] degree;
+	private final VariableQueue queue;
+
+	final SolverStats stats = new SolverStats();
+
+	MrvSolver(Geometry geometry) {
+		this.geometry = geometry;
+		rowMasks = new long[geometry.size];
+		colMasks = new long[geometry.size];
+		boxMasks = new long[geometry.size];
+		degree = new int[geometry.cells];
+		queue = new VariableQueue(geometry.cells, geometry.size, geometry.peers[0].length);
+	}
+
+	/**
+	 * Solves vals in place. Returns false if the givens conflict or there is
+	 * no solution.
+	 */
+	boolean solve(int[][] vals) {
+		stats.reset();
+		boolean solved = load(vals) && solve(vals, 0);
+		stats.finish(solved);
+		return solved;
+	}
+
+	private boolean load(int[][] vals) {
+		for (int cell = 0; cell < geometry.cells; cell++) {
+			int value = vals[geometry.rowOf[cell]][geometry.colOf[cell]];
+			if (value == 0) {
+				continue;
+			}
+			long bit = 1L << value;
+			if ((used(cell) & bit) != 0) {
+				return false;
+			}
+			rowMasks[geometry.rowOf[cell]] |= bit;
+			colMasks[geometry.colOf[cell]] |= bit;
+			boxMasks[geometry.boxOf[cell]] |= bit;
+		}
+		for (int cell = 0; cell < geometry.cells; cell++) {
+			if (vals[geometry.rowOf[cell]][geometry.colOf[cell]] != 0) {
+				continue;
+			}
+			for (int peer : geometry.peers[cell]) {
+				if (vals[geometry.rowOf[peer]][geometry.colOf[peer]] == 0) {
+					degree[cell]++;
+				}
+			}
+			queue.add(cell, Long.bitCount(candidates(cell)), degree[cell]);
+		}
+		return true;
+	}
+
+	private boolean solve(int[][] vals, int depth) {
+		int cell = queue.poll();
+		if (cell < 0) {
+			return true;
+		}
+		stats.node(depth);
+		int row = geometry.rowOf[cell];
+		int col = geometry.colOf[cell];
+		int box = geometry.boxOf[cell];
+		long remaining = candidates(cell);
+		while (remaining != 0) {
+			long bit = Long.lowestOneBit(remaining);
+			remaining &= ~bit;
+
+			vals[row][col] = Long.numberOfTrailingZeros(bit);
+			rowMasks[row] |= bit;
+			colMasks[col] |= bit;
+			boxMasks[box] |= bit;
+			updatePeers(cell, -1);
+
+			if (solve(vals, depth + 1)) {
+				return true;
+			}
+
+			stats.backtracks++;
+			rowMasks[row] &= ~bit;
+			colMasks[col] &= ~bit;
+			boxMasks[box] &= ~bit;
+			updatePeers(cell, 1);
+		}
+		vals[row][col] = 0;
+		queue.add(cell, Long.bitCount(candidates(cell)), degree[cell]);
+		return false;
+	}
+
+	// Re-keys the empty peers of cell after it was placed (delta -1) or
+	// cleared (delta +1).
+	private void updatePeers(int cell, int delta) {
+		for (int peer : geometry.peers[cell]) {
+			if (queue.contains(peer)) {
+				degree[peer] += delta;
+				queue.update(peer, Long.bitCount(candidates(peer)), degree[peer]);
+			}
+		}
+	}
+
+	private long used(int cell) {
+		return rowMasks[geometry.rowOf[cell]] | colMasks[geometry.colOf[cell]] | boxMasks[geometry.boxOf[cell]];
+	}
+
+	private long candidates(int cell) {
+		return geometry.fullMask & ~used(cell);
+	}
+
+}
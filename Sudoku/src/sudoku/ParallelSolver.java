@@ -0,0 +1,240 @@
+package sudoku;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fork/join search over the propagation engine. Near the root every
+ * candidate of the branching cell becomes its own task holding an
+ * independent copy of the board; below the split depth, or once the worker
+ * already has enough queued work for thieves, a task searches its subtree
+ * sequentially. The first task to find a solution stops all the others,
+ * or, when counting, the task that brings the total up to the limit.
+ */
+final class ParallelSolver {
+
+	// Tasks left in the local queue before a worker stops splitting
+	private static final int SURPLUS = 3;
+
+	private final ForkJoinPool pool;
+	private final int splitDepth;
+
+	SolverStats stats = new SolverStats();
+
+	// Watched by every task's board when set
+	SolveBudget budget;
+
+	ParallelSolver(ForkJoinPool pool, int splitDepth) {
+		this.pool = pool;
+		this.splitDepth = splitDepth;
+	}
+
+	/**
+	 * Solves vals in place. Returns false if the givens conflict or there is
+	 * no solution.
+	 */
+	boolean solve(int[][] vals) {
+		Propagator root = new Propagator(Geometry.forSize(vals.length));
+		root.stats.watch(budget);
+		Search search = new Search(false, 1);
+		if (root.load(vals)) {
+			try {
+				pool.invoke(new SearchTask(search, root, 0));
+			} catch (SolveBudget.Expired expired) {
+				throw search.expire();
+			}
+		} else {
+			search.stats.merge(root.stats);
+		}
+		stats = search.finish();
+		int[] solution = search.solution.get();
+		if (solution == null) {
+			return false;
+		}
+		Geometry geometry = root.geometry;
+		for (int cell = 0; cell < geometry.cells; cell++) {
+			vals[geometry.rowOf[cell]][geometry.colOf[cell]] = solution[cell];
+		}
+		return true;
+	}
+
+	/**
+	 * Counts the solutions of vals, stopping once limit have been found, so
+	 * the result is never more than limit. vals is not modified.
+	 */
+	long countSolutions(int[][] vals, long limit) {
+		Propagator root = new Propagator(Geometry.forSize(vals.length));
+		Search search = new Search(true, limit);
+		if (root.load(vals)) {
+			try {
+				pool.invoke(new SearchTask(search, root, 0));
+			} catch (SolveBudget.Expired expired) {
+				throw search.expire();
+			}
+		} else {
+			search.stats.merge(root.stats);
+		}
+		stats = search.finish();
+		return Math.min(search.solutions.get(), limit);
+	}
+
+	// State shared by all tasks of one solve or count
+	private static final class Search {
+		final boolean counting;
+		final long limit;
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicReference<int[]> solution = new AtomicReference<int[]>();
+		final AtomicLong solutions = new AtomicLong();
+		final SolverStats stats = new SolverStats();
+
+		Search(boolean counting, long limit) {
+			this.counting = counting;
+			this.limit = limit;
+			stats.reset();
+		}
+
+		void found(int[] values) {
+			if (!counting && solution.compareAndSet(null, values.clone())) {
+				stop.set(true);
+			}
+			add(1);
+		}
+
+		SolverStats finish() {
+			stats.finish(solutions.get() > 0);
+			return stats;
+		}
+
+		// The budget ran out in one of the tasks. Every task merges its counters
+		// as it ends, so the caller gets the effort of the whole search rather
+		// than of the task that noticed; tasks still running see stop and merge
+		// what little they add on their way out.
+		SolveBudget.Expired expire() {
+			stop.set(true);
+			return new SolveBudget.Expired(stats);
+		}
+
+		void add(long count) {
+			if (solutions.addAndGet(count) >= limit) {
+				stop.set(true);
+			}
+		}
+	}
+
+	private final class SearchTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Search search;
+		private final Propagator board;
+		private final int depth;
+
+		SearchTask(Search search, Propagator board, int depth) {
+			this.search = search;
+			this.board = board;
+			this.depth = depth;
+		}
+
+		@Override
+		protected void compute() {
+			if (search.stop.get()) {
+				return;
+			}
+			// Every task counts its nodes from zero, so one that ends within
+			// checkNodes nodes would never look at the budget itself
+			if (budget != null && budget.isExpired()) {
+				throw search.expire();
+			}
+			if (depth >= splitDepth || getSurplusQueuedTaskCount() > SURPLUS) {
+				board.stop = search.stop;
+				try {
+					if (search.counting) {
+						long left = search.limit - search.solutions.get();
+						if (left > 0) {
+							search.add(board.countSolutions(left));
+						}
+					} else if (board.solve()) {
+						search.found(board.values);
+					}
+				} finally {
+					search.stats.merge(board.stats);
+				}
+				return;
+			}
+
+			int cell = board.selectCell();
+			if (cell < 0) {
+				search.found(board.values);
+				return;
+			}
+			try {
+				board.stats.node(depth);
+			} finally {
+				search.stats.merge(board.stats);
+			}
+			List<SearchTask> children = new ArrayList<SearchTask>();
+			long remaining = board.domains[cell];
+			while (remaining != 0) {
+				long bit = Long.lowestOneBit(remaining);
+				remaining &= ~bit;
+				Propagator child = new Propagator(board);
+				if (child.assign(cell, Long.numberOfTrailingZeros(bit))) {
+					children.add(new SearchTask(search, child, depth + 1));
+				}
+			}
+			invokeAll(children);
+		}
+	}
+
+	/**
+	 * Times a puzzle at 1, 2, 4, ... workers up to the number of available
+	 * processors and prints the speedup over one worker.
+	 * 
+	 * Usage: ParallelSolver puzzle.txt [runs]
+	 */
+	public static void main(String[] args) throws IOException {
+		String filename = args.length > 0 ? args[0] : "sudoku36Hard.txt";
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		PuzzleReader input = new PuzzleReader(new FileInputStream(filename));
+		int[] cells = input.read(null);
+		input.close();
+		int size = input.size;
+		int[][] puzzle = new int[size][size];
+		for (int i = 0; i < size; i++) {
+			System.arraycopy(cells, i * size, puzzle[i], 0, size);
+		}
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		double baseline = 0;
+		System.out.println("Puzzle: " + filename + ", cores: " + cores);
+		for (int workers = 1; workers <= cores; workers = workers == cores ? cores + 1 : Math.min(workers * 2, cores)) {
+			ForkJoinPool pool = new ForkJoinPool(workers);
+			ParallelSolver solver = new ParallelSolver(pool, 8);
+			long best = Long.MAX_VALUE;
+			for (int run = 0; run < runs; run++) {
+				int[][] vals = new int[size][];
+				for (int i = 0; i < size; i++) {
+					vals[i] = puzzle[i].clone();
+				}
+				long start = System.nanoTime();
+				solver.solve(vals);
+				best = Math.min(best, System.nanoTime() - start);
+			}
+			pool.shutdown();
+			double millis = best / 1e6;
+			if (workers == 1) {
+				baseline = millis;
+			}
+			System.out.printf("%3d workers: %9.2f ms  speedup %5.2fx  nodes %d%n", workers, millis, baseline / millis,
+					solver.stats.nodes);
+		}
+	}
+
+}
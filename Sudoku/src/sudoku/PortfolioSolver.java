@@ -0,0 +1,277 @@
+package sudoku;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs differently configured solvers on the same puzzle at once, one
+ * thread each, and takes the answer of whichever finishes first; the others
+ * are cancelled through a shared SolveBudget. Run times of a single
+ * backtracking configuration are heavy-tailed, so a portfolio mixing value
+ * orders, randomized tie-breaking with Luby restarts and the clause
+ * learning solver cuts the worst cases. The winning configuration is kept
+ * for tuning, see main.
+ */
+final class PortfolioSolver {
+
+	/**
+	 * One member of the portfolio.
+	 */
+	static final class Config {
+		final String name;
+		final boolean descending;
+		final boolean randomized;
+		// Luby restart unit in nodes, 0 for a single complete search
+		final long restartNodes;
+		final long seed;
+		final boolean sat;
+
+		private Config(String name, boolean descending, boolean randomized, long restartNodes, long seed,
+				boolean sat) {
+			this.name = name;
+			this.descending = descending;
+			this.randomized = randomized;
+			this.restartNodes = restartNodes;
+			this.seed = seed;
+			this.sat = sat;
+		}
+
+		static Config propagate(String name, boolean descending) {
+			return new Config(name, descending, false, 0, 0, false);
+		}
+
+		static Config restarts(String name, long restartNodes, long seed) {
+			return new Config(name, false, true, restartNodes, seed, false);
+		}
+
+		static Config sat(String name) {
+			return new Config(name, false, false, 0, 0, true);
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	static final Config[] DEFAULT_CONFIGS = { Config.propagate("ascending", false),
+			Config.propagate("descending", true), Config.restarts("luby-64", 64, 1),
+			Config.restarts("luby-1024", 1024, 2), Config.sat("sat") };
+
+	// How often the caller's budget is looked at while waiting
+	private static final long POLL_MILLIS = 5;
+
+	private static ExecutorService sharedPool;
+
+	private final ExecutorService pool;
+	private final Config[] configs;
+
+	SolverStats stats = new SolverStats();
+	Config winner;
+
+	PortfolioSolver(ExecutorService pool, Config... configs) {
+		this.pool = pool;
+		this.configs = configs;
+	}
+
+	/**
+	 * Daemon pool with a thread per running configuration, shared by all
+	 * portfolio solves.
+	 */
+	static synchronized ExecutorService sharedPool() {
+		if (sharedPool == null) {
+			sharedPool = Executors.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable task) {
+					Thread thread = new Thread(task, "portfolio");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return sharedPool;
+	}
+
+	/**
+	 * Solves vals in place. Returns false if the givens conflict or there is
+	 * no solution. When budget is set and runs out first, every member is
+	 * cancelled and SolveBudget.Expired is thrown with the effort of all of
+	 * them. An interrupt of the calling thread cancels the members the same
+	 * way; Expired is then thrown marked cancelled, with the interrupt
+	 * status kept, since no answer was reached.
+	 */
+	boolean solve(int[][] vals, SolveBudget budget) {
+		SolveBudget race = new SolveBudget();
+		CompletionService<Run> runs = new ExecutorCompletionService<Run>(pool);
+		winner = null;
+		int pending = 0;
+		try {
+			for (Config config : configs) {
+				runs.submit(new Run(config, vals, race));
+				pending++;
+			}
+			while (pending > 0) {
+				Future<Run> done = runs.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (done == null) {
+					if (budget != null && budget.isExpired()) {
+						race.cancel();
+						throw new SolveBudget.Expired(collect(runs, pending));
+					}
+					continue;
+				}
+				pending--;
+				Run run = done.get();
+				if (run.finished) {
+					winner = run.config;
+					stats = run.stats;
+					if (run.solved) {
+						for (int i = 0; i < vals.length; i++) {
+							System.arraycopy(run.vals[i], 0, vals[i], 0, vals.length);
+						}
+					}
+					return run.solved;
+				}
+			}
+			return false;
+		} catch (InterruptedException exception) {
+			race.cancel();
+			SolverStats total = collect(runs, pending);
+			Thread.currentThread().interrupt();
+			throw new SolveBudget.Expired(total, true);
+		} catch (ExecutionException exception) {
+			throw new RuntimeException(exception.getCause());
+		} finally {
+			race.cancel();
+		}
+	}
+
+	// Adds up the counters of the pending members once the race is
+	// cancelled. They stop at their next budget check; waiting for them
+	// keeps the totals final, so the wait is not cut short by an interrupt.
+	private SolverStats collect(CompletionService<Run> runs, int pending) {
+		SolverStats total = new SolverStats();
+		total.reset();
+		boolean interrupted = false;
+		while (pending > 0) {
+			try {
+				total.merge(runs.take().get().stats);
+				pending--;
+			} catch (InterruptedException exception) {
+				interrupted = true;
+			} catch (ExecutionException exception) {
+				throw new RuntimeException(exception.getCause());
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		stats = total;
+		return total;
+	}
+
+	// One configuration's attempt on a private copy of the puzzle
+	private static final class Run implements Callable<Run> {
+		final Config config;
+		final int[][] vals;
+		final SolveBudget race;
+		boolean finished;
+		boolean solved;
+		SolverStats stats = new SolverStats();
+
+		Run(Config config, int[][] puzzle, SolveBudget race) {
+			this.config = config;
+			this.race = race;
+			vals = new int[puzzle.length][];
+			for (int i = 0; i < puzzle.length; i++) {
+				vals[i] = puzzle[i].clone();
+			}
+		}
+
+		@Override
+		public Run call() {
+			try {
+				if (config.sat) {
+					SatEncoding encoding = new SatEncoding(Geometry.forSize(vals.length));
+					encoding.budget = race;
+					solved = encoding.solve(vals);
+					stats = encoding.stats;
+				} else {
+					solved = search();
+				}
+				finished = true;
+			} catch (SolveBudget.Expired expired) {
+				stats = expired.stats;
+			}
+			return this;
+		}
+
+		private boolean search() {
+			Propagator board = new Propagator(Geometry.forSize(vals.length));
+			board.stats.watch(race);
+			board.setValueOrder(config.descending ? Propagator.ValueOrder.DESCENDING : Propagator.ValueOrder.ASCENDING);
+			board.random = config.randomized ? new Random(config.seed) : null;
+			stats = board.stats;
+			if (!board.load(vals)) {
+				return false;
+			}
+			int root = board.mark();
+			for (int restart = 1;; restart++) {
+				if (config.restartNodes > 0) {
+					board.nodeLimit = board.stats.nodes + CdclSolver.luby(restart) * config.restartNodes;
+				}
+				if (board.solve()) {
+					board.copyTo(vals);
+					return true;
+				}
+				// A search that stopped short of its limit covered the whole tree
+				if (board.stats.nodes < board.nodeLimit) {
+					return false;
+				}
+				board.undo(root);
+			}
+		}
+	}
+
+	/**
+	 * Solves every puzzle of the given files, or of the bundled and generated
+	 * corpus, with the default portfolio and prints how often each
+	 * configuration won.
+	 * 
+	 * Usage: PortfolioSolver [puzzles.txt ...]
+	 */
+	public static void main(String[] args) throws IOException {
+		List<String> files = args.length > 0 ? Arrays.asList(args) : SudokuBenchmark.corpus(new File("."));
+		PortfolioSolver portfolio = new PortfolioSolver(sharedPool(), DEFAULT_CONFIGS);
+		for (String file : files) {
+			int[] wins = new int[DEFAULT_CONFIGS.length];
+			int puzzles = 0;
+			long start = System.nanoTime();
+			for (int[][] vals : SudokuBenchmark.load(file)) {
+				portfolio.solve(vals, null);
+				puzzles++;
+				if (portfolio.winner != null) {
+					wins[Arrays.asList(DEFAULT_CONFIGS).indexOf(portfolio.winner)]++;
+				}
+			}
+			System.out.printf("%-28s %6d puzzles %10.2f ms/puzzle  wins:", file, puzzles,
+					(System.nanoTime() - start) / 1e6 / Math.max(1, puzzles));
+			for (int c = 0; c < DEFAULT_CONFIGS.length; c++) {
+				System.out.printf(" %s %d", DEFAULT_CONFIGS[c], wins[c]);
+			}
+			System.out.println();
+		}
+	}
+
+}
@@ -0,0 +1,567 @@
+package sudoku;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Candidate-domain propagation for one board. Every assignment runs forward
+ * checking, naked singles and hidden singles to a fixed point. Changes are
+ * recorded on a trail so search can roll back to a mark instead of copying
+ * the board.
+ */
+final class Propagator {
+
+	final Geometry geometry;
+	final int[] values;
+	final long[] domains;
+
+	// Trail entries: a cell index with its previous domain, or ~cell for a
+	// value that was set (and must be cleared on undo).
+	private int[] trailCell;
+	private long[] trailDomain;
+	private int trailSize;
+
+	// Cells whose domain became a single digit but are not placed yet
+	private final int[] pending;
+	private int pendingSize;
+
+	final SolverStats stats = new SolverStats();
+
+	// Optional killer cage constraints, shared by copies of this board
+	KillerCages cages;
+
+	// When set by another thread, solve gives up at the next node
+	AtomicBoolean stop;
+
+	// solve and countSolutions give up once this many nodes were expanded
+	long nodeLimit = Long.MAX_VALUE;
+
+	/**
+	 * Order in which solve tries the digits of a cell. LEAST_CONSTRAINING
+	 * takes the digit that is a candidate in the fewest peers first, from
+	 * per-unit candidate counts kept up to date with the domains. IMPACT
+	 * takes the digit whose assignments shrank the search space least so
+	 * far (Refalo's impacts, learned over the whole search); a digit not
+	 * tried yet in a cell is rated by the shrinking its removal from the
+	 * peers alone would cause.
+	 */
+	enum ValueOrder {
+		ASCENDING, DESCENDING, LEAST_CONSTRAINING, IMPACT
+	}
+
+	private ValueOrder valueOrder = ValueOrder.ASCENDING;
+
+	// With random set, solve breaks ties between cells and orders digits at
+	// random, whatever the value order
+	Random random;
+
+	// LEAST_CONSTRAINING: cells of each unit holding each digit, indexed
+	// unit * slots + digit, with slots = size + 1
+	private int[] unitCounts;
+	private final int slots;
+
+	// IMPACT: log2 of the search space, the product of the domain sizes, in
+	// fixed point so undo restores it exactly, and the summed impact and
+	// number of measurements per cell * slots + digit
+	private static final int LOG_SCALE = 1 << 20;
+	private static final long[] LOG_SIZE = new long[65];
+	static {
+		for (int n = 1; n <= 64; n++) {
+			LOG_SIZE[n] = Math.round(Math.log(n) / Math.log(2) * LOG_SCALE);
+		}
+	}
+	private long logSize;
+	private double[] impactSum;
+	private int[] impactCount;
+
+	Propagator(Geometry geometry) {
+		this.geometry = geometry;
+		slots = geometry.size + 1;
+		values = new int[geometry.cells];
+		domains = new long[geometry.cells];
+		trailCell = new int[geometry.cells * 4];
+		trailDomain = new long[geometry.cells * 4];
+		pending = new int[geometry.cells + 1];
+		reset();
+	}
+
+	/**
+	 * Independent copy of the current state of other, with an empty trail.
+	 */
+	Propagator(Propagator other) {
+		this(other.geometry);
+		System.arraycopy(other.values, 0, values, 0, values.length);
+		System.arraycopy(other.domains, 0, domains, 0, domains.length);
+		cages = other.cages;
+		stats.watch(other.stats.budget);
+		setValueOrder(other.valueOrder);
+	}
+
+	void reset() {
+		Arrays.fill(values, 0);
+		Arrays.fill(domains, geometry.fullMask);
+		trailSize = 0;
+		pendingSize = 0;
+		stats.reset();
+		recount();
+	}
+
+	/**
+	 * Switches the digit order of solve. Learned impacts are kept when IMPACT
+	 * is set again, so restarts can build on them.
+	 */
+	void setValueOrder(ValueOrder order) {
+		valueOrder = order;
+		unitCounts = order == ValueOrder.LEAST_CONSTRAINING ? new int[geometry.units.length * slots] : null;
+		if (order == ValueOrder.IMPACT && impactSum == null) {
+			impactSum = new double[geometry.cells * slots];
+			impactCount = new int[geometry.cells * slots];
+		}
+		recount();
+	}
+
+	// Rebuilds the state that setDomain and undo keep incrementally
+	private void recount() {
+		if (unitCounts != null) {
+			Arrays.fill(unitCounts, 0);
+			for (int cell = 0; cell < geometry.cells; cell++) {
+				count(cell, domains[cell], 1);
+			}
+		}
+		logSize = 0;
+		for (long domain : domains) {
+			logSize += LOG_SIZE[Long.bitCount(domain)];
+		}
+	}
+
+	private void count(int cell, long changed, int delta) {
+		short[] unitsOf = geometry.unitsOf;
+		for (; changed != 0; changed &= changed - 1) {
+			int digit = Long.numberOfTrailingZeros(changed);
+			unitCounts[unitsOf[3 * cell] * slots + digit] += delta;
+			unitCounts[unitsOf[3 * cell + 1] * slots + digit] += delta;
+			unitCounts[unitsOf[3 * cell + 2] * slots + digit] += delta;
+		}
+	}
+
+	/**
+	 * Resets the state and places every given of vals. Returns false if the
+	 * givens already contradict each other.
+	 */
+	boolean load(int[][] vals) {
+		reset();
+		for (int cell = 0; cell < geometry.cells; cell++) {
+			int value = vals[geometry.rowOf[cell]][geometry.colOf[cell]];
+			if (value != 0 && !assign(cell, value)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Same as load(int[][]) for a board stored row-major in a flat array.
+	 */
+	boolean load(int[] givens) {
+		reset();
+		for (int cell = 0; cell < geometry.cells; cell++) {
+			if (givens[cell] != 0 && !assign(cell, givens[cell])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	void copyTo(int[][] vals) {
+		for (int cell = 0; cell < geometry.cells; cell++) {
+			vals[geometry.rowOf[cell]][geometry.colOf[cell]] = values[cell];
+		}
+	}
+
+	int mark() {
+		return trailSize;
+	}
+
+	void undo(int mark) {
+		while (trailSize > mark) {
+			trailSize--;
+			int cell = trailCell[trailSize];
+			if (cell < 0) {
+				values[~cell] = 0;
+			} else {
+				changeDomain(cell, trailDomain[trailSize]);
+			}
+		}
+		pendingSize = 0;
+	}
+
+	/**
+	 * Places digit in cell and propagates. Returns false on a wipe-out, in
+	 * which case the caller must undo to a mark taken before the call.
+	 */
+	boolean assign(int cell, int digit) {
+		long bit = 1L << digit;
+		if ((domains[cell] & bit) == 0) {
+			return false;
+		}
+		if (values[cell] != 0) {
+			return true;
+		}
+		setDomain(cell, bit);
+		pending[pendingSize++] = cell;
+		return propagate();
+	}
+
+	/**
+	 * Removes digit from the candidates of cell and propagates. Returns false
+	 * on a wipe-out, with the same undo contract as assign.
+	 */
+	boolean exclude(int cell, int digit) {
+		long domain = domains[cell];
+		if ((domain & (1L << digit)) == 0) {
+			return true;
+		}
+		return restrict(cell, domain & ~(1L << digit)) && propagate();
+	}
+
+	/**
+	 * Depth-first search over the propagated state, branching on the cell with
+	 * the smallest domain. On success values holds the solution.
+	 */
+	boolean solve() {
+		boolean solved = solve(0);
+		stats.finish(solved);
+		return solved;
+	}
+
+	private boolean solve(int depth) {
+		int cell = selectCell();
+		if (cell < 0) {
+			return true;
+		}
+		if (stopped()) {
+			return false;
+		}
+		stats.node(depth);
+		long remaining = domains[cell];
+		while (remaining != 0) {
+			long bit = nextDigit(cell, remaining);
+			remaining &= ~bit;
+			int mark = mark();
+			int digit = Long.numberOfTrailingZeros(bit);
+			long before = logSize;
+			boolean consistent = assign(cell, digit);
+			if (valueOrder == ValueOrder.IMPACT) {
+				// 1 - (size after / size before), and 1 for a dead end
+				double impact = consistent ? 1 - Math.pow(2, (double) (logSize - before) / LOG_SCALE) : 1;
+				impactSum[cell * slots + digit] += impact;
+				impactCount[cell * slots + digit]++;
+			}
+			if (consistent && solve(depth + 1)) {
+				return true;
+			}
+			undo(mark);
+			// A subtree that gave up is no dead end; trying the other digits
+			// would only assign them, and rate them, for nothing
+			if (stopped()) {
+				return false;
+			}
+			stats.backtracks++;
+		}
+		return false;
+	}
+
+	// True once the node limit is reached or another thread asked to stop
+	private boolean stopped() {
+		return stats.nodes >= nodeLimit || (stop != null && stop.get());
+	}
+
+	/**
+	 * Counts solutions below the current state, giving up once limit have
+	 * been found. The state is rolled back before returning.
+	 */
+	long countSolutions(long limit) {
+		long count = countSolutions(limit, 0);
+		stats.finish(count > 0);
+		return count;
+	}
+
+	private long countSolutions(long limit, int depth) {
+		int cell = selectCell();
+		if (cell < 0) {
+			return 1;
+		}
+		if (stopped()) {
+			return 0;
+		}
+		stats.node(depth);
+		long count = 0;
+		long remaining = domains[cell];
+		while (remaining != 0 && count < limit) {
+			long bit = Long.lowestOneBit(remaining);
+			remaining &= ~bit;
+			int mark = mark();
+			if (assign(cell, Long.numberOfTrailingZeros(bit))) {
+				count += countSolutions(limit - count, depth + 1);
+			}
+			undo(mark);
+			if (stopped()) {
+				break;
+			}
+		}
+		return count;
+	}
+
+	private long nextDigit(int cell, long remaining) {
+		if (random != null) {
+			for (int skip = random.nextInt(Long.bitCount(remaining)); skip > 0; skip--) {
+				remaining &= remaining - 1;
+			}
+			return Long.lowestOneBit(remaining);
+		}
+		switch (valueOrder) {
+		case DESCENDING:
+			return Long.highestOneBit(remaining);
+		case LEAST_CONSTRAINING:
+			return leastConstraining(cell, remaining);
+		case IMPACT:
+			return leastImpact(cell, remaining);
+		default:
+			return Long.lowestOneBit(remaining);
+		}
+	}
+
+	// Digit of remaining that is a candidate in the fewest cells of the units
+	// of cell. Peers sharing the box and a line count twice, which does not
+	// change much in the ranking.
+	private long leastConstraining(int cell, long remaining) {
+		short[] unitsOf = geometry.unitsOf;
+		int row = unitsOf[3 * cell] * slots;
+		int col = unitsOf[3 * cell + 1] * slots;
+		int box = unitsOf[3 * cell + 2] * slots;
+		long best = 0;
+		int bestCount = Integer.MAX_VALUE;
+		for (; remaining != 0; remaining &= remaining - 1) {
+			int digit = Long.numberOfTrailingZeros(remaining);
+			int count = unitCounts[row + digit] + unitCounts[col + digit] + unitCounts[box + digit];
+			if (count < bestCount) {
+				best = 1L << digit;
+				bestCount = count;
+			}
+		}
+		return best;
+	}
+
+	// Impact of placing digit in cell counting only its removal from the
+	// peers, before any further propagation
+	private double estimateImpact(int cell, int digit) {
+		long bit = 1L << digit;
+		long change = LOG_SIZE[1] - LOG_SIZE[Long.bitCount(domains[cell])];
+		for (int peer : geometry.peers[cell]) {
+			long domain = domains[peer];
+			if ((domain & bit) != 0) {
+				int size = Long.bitCount(domain);
+				change += LOG_SIZE[size - 1] - LOG_SIZE[size];
+			}
+		}
+		return 1 - Math.pow(2, (double) change / LOG_SCALE);
+	}
+
+	// Digit of remaining with the lowest average impact in cell
+	private long leastImpact(int cell, long remaining) {
+		long best = 0;
+		double bestImpact = Double.MAX_VALUE;
+		for (; remaining != 0; remaining &= remaining - 1) {
+			int digit = Long.numberOfTrailingZeros(remaining);
+			int n = impactCount[cell * slots + digit];
+			double impact = n == 0 ? estimateImpact(cell, digit) : impactSum[cell * slots + digit] / n;
+			if (impact < bestImpact) {
+				best = 1L << digit;
+				bestImpact = impact;
+			}
+		}
+		return best;
+	}
+
+	// Unassigned cell with the fewest candidates, or -1 when all are placed
+	int selectCell() {
+		if (random != null) {
+			return selectRandomCell();
+		}
+		int best = -1;
+		int bestCount = Integer.MAX_VALUE;
+		for (int cell = 0; cell < geometry.cells; cell++) {
+			if (values[cell] == 0) {
+				int count = Long.bitCount(domains[cell]);
+				if (count < bestCount) {
+					best = cell;
+					bestCount = count;
+					if (count == 2) {
+						break;
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	// Uniformly random choice among the cells with the fewest candidates
+	private int selectRandomCell() {
+		int best = -1;
+		int bestCount = Integer.MAX_VALUE;
+		int ties = 0;
+		for (int cell = 0; cell < geometry.cells; cell++) {
+			if (values[cell] == 0) {
+				int count = Long.bitCount(domains[cell]);
+				if (count < bestCount) {
+					best = cell;
+					bestCount = count;
+					ties = 1;
+				} else if (count == bestCount && random.nextInt(++ties) == 0) {
+					best = cell;
+				}
+			}
+		}
+		return best;
+	}
+
+	private boolean propagate() {
+		while (true) {
+			while (pendingSize > 0) {
+				int cell = pending[--pendingSize];
+				if (values[cell] != 0) {
+					continue;
+				}
+				long bit = domains[cell];
+				setValue(cell, Long.numberOfTrailingZeros(bit));
+				for (int peer : geometry.peers[cell]) {
+					long domain = domains[peer];
+					if ((domain & bit) != 0) {
+						domain &= ~bit;
+						stats.propagations++;
+						if (domain == 0) {
+							pendingSize = 0;
+							return false;
+						}
+						setDomain(peer, domain);
+						if ((domain & (domain - 1)) == 0) {
+							pending[pendingSize++] = peer;
+						}
+					}
+				}
+			}
+			int found = hiddenSingles();
+			if (found == 0 && cages != null) {
+				found = cages.prune(this);
+			}
+			if (found < 0) {
+				pendingSize = 0;
+				return false;
+			}
+			if (found == 0) {
+				return true;
+			}
+		}
+	}
+
+	// Queues every digit that fits in only one cell of its unit. Returns the
+	// number of cells queued, or -1 if some unit can no longer hold a digit.
+	// Bit d of once and twice is a lane for digit d, so a unit is scanned
+	// for all digits at once. Building the masks of every unit in a single
+	// row-major sweep found the same singles but measured slower.
+	private int hiddenSingles() {
+		int found = 0;
+		for (int[] unit : geometry.units) {
+			long once = 0;
+			long twice = 0;
+			long placed = 0;
+			for (int cell : unit) {
+				long domain = domains[cell];
+				twice |= once & domain;
+				once |= domain;
+				if (values[cell] != 0) {
+					placed |= domain;
+				}
+			}
+			if (once != geometry.fullMask) {
+				return -1;
+			}
+			long hidden = once & ~twice & ~placed;
+			while (hidden != 0) {
+				long bit = Long.lowestOneBit(hidden);
+				hidden &= ~bit;
+				int target = -1;
+				for (int cell : unit) {
+					if ((domains[cell] & bit) != 0) {
+						target = cell;
+						break;
+					}
+				}
+				if (target < 0) {
+					// an earlier hidden single in this unit claimed the same cell
+					return -1;
+				}
+				if (domains[target] != bit) {
+					setDomain(target, bit);
+					pending[pendingSize++] = target;
+					found++;
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Narrows the domain of cell to domain, which must be a subset of the
+	 * current one, and queues the cell if only one digit is left. Returns
+	 * false if nothing is left.
+	 */
+	boolean restrict(int cell, long domain) {
+		if (domain == domains[cell]) {
+			return true;
+		}
+		if (domain == 0) {
+			return false;
+		}
+		setDomain(cell, domain);
+		stats.propagations++;
+		if ((domain & (domain - 1)) == 0) {
+			pending[pendingSize++] = cell;
+		}
+		return true;
+	}
+
+	private void setDomain(int cell, long domain) {
+		push(cell, domains[cell]);
+		changeDomain(cell, domain);
+	}
+
+	private void changeDomain(int cell, long domain) {
+		long previous = domains[cell];
+		domains[cell] = domain;
+		if (unitCounts != null) {
+			count(cell, previous & ~domain, -1);
+			count(cell, domain & ~previous, 1);
+		}
+		if (valueOrder == ValueOrder.IMPACT) {
+			logSize += LOG_SIZE[Long.bitCount(domain)] - LOG_SIZE[Long.bitCount(previous)];
+		}
+	}
+
+	private void setValue(int cell, int value) {
+		push(~cell, 0);
+		values[cell] = value;
+	}
+
+	private void push(int cell, long domain) {
+		if (trailSize == trailCell.length) {
+			trailCell = Arrays.copyOf(trailCell, trailSize * 2);
+			trailDomain = Arrays.copyOf(trailDomain, trailSize * 2);
+		}
+		trailCell[trailSize] = cell;
+		trailDomain[trailSize] = domain;
+		trailSize++;
+	}
+
+}
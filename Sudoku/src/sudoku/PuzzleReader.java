@@ -0,0 +1,180 @@
+package sudoku;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Byte-level puzzle parser over a reusable buffer. Digits are decoded
+ * straight from the bytes into a flat row-major board, with no Strings,
+ * regular expressions or boxing on the way.
+ * 
+ * Two record formats are recognised: the size-header format (N followed by
+ * N*N numbers separated by any mix of spaces, tabs and line breaks), and a
+ * compact 81 character token for a 9x9 board where '0' or '.' is an empty
+ * cell.
+ */
+final class PuzzleReader implements Closeable {
+
+	// Largest number nextInt accepts, above any board size, cell count or
+	// cage sum; keeps the accumulation far from int overflow
+	static final int MAX_VALUE = 99999;
+
+	private final InputStream in;
+	private final byte[] buffer;
+	private int position;
+	private int limit;
+
+	// Board size and number of values read for the last record
+	int size;
+	int count;
+	boolean compact;
+
+	PuzzleReader(InputStream in) {
+		this(in, 1 << 16);
+	}
+
+	PuzzleReader(InputStream in, int bufferSize) {
+		this.in = in;
+		this.buffer = new byte[bufferSize];
+	}
+
+	/**
+	 * Reads the next record into cells, or into a new array if cells is null
+	 * or has the wrong length. Returns null at end of input. When the input
+	 * ends early, count tells how many values were actually read. A value
+	 * above the board size is rejected.
+	 */
+	int[] read(int[] cells) throws IOException {
+		if (!hasNext()) {
+			return null;
+		}
+		if (compactAhead()) {
+			cells = cells != null && cells.length == 81 ? cells : new int[81];
+			for (int i = 0; i < 81; i++) {
+				byte b = buffer[position++];
+				cells[i] = b == '.' ? 0 : b - '0';
+			}
+			size = 9;
+			count = 81;
+			compact = true;
+			return cells;
+		}
+
+		size = nextInt();
+		if (size <= 0 || size > 63) {
+			throw new RuntimeException("Unsupported board size: " + size);
+		}
+		int cellCount = size * size;
+		cells = cells != null && cells.length == cellCount ? cells : new int[cellCount];
+		count = 0;
+		compact = false;
+		while (count < cellCount && hasNext()) {
+			// Boards keep a value as the bit 1L << value, which wraps above 63
+			cells[count++] = nextInt(size);
+		}
+		return cells;
+	}
+
+	/**
+	 * Skips whitespace and reports whether another token follows.
+	 */
+	boolean hasNext() throws IOException {
+		while (true) {
+			if (position == limit && !fill()) {
+				return false;
+			}
+			byte b = buffer[position];
+			if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+				return true;
+			}
+			position++;
+		}
+	}
+
+	int nextInt() throws IOException {
+		return nextInt(MAX_VALUE);
+	}
+
+	/**
+	 * Reads a non-negative number no larger than max. A longer digit string
+	 * is rejected as soon as it passes max, before it can wrap around.
+	 */
+	int nextInt(int max) throws IOException {
+		if (!hasNext()) {
+			throw new RuntimeException("Incorrect number of inputs.");
+		}
+		int value = 0;
+		boolean digits = false;
+		while (position < limit || fill()) {
+			byte b = buffer[position];
+			if (b >= '0' && b <= '9') {
+				value = value * 10 + (b - '0');
+				if (value > max) {
+					throw new RuntimeException("Value out of range: above " + max);
+				}
+				digits = true;
+				position++;
+			} else if (b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+				break;
+			} else {
+				throw new RuntimeException("Unexpected character '" + (char) b + "' in input.");
+			}
+		}
+		if (!digits) {
+			throw new RuntimeException("Incorrect number of inputs.");
+		}
+		return value;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	// True if the next token is exactly 81 digits or dots. Leaves the token
+	// contiguous in the buffer. Reads only as far as needed to decide, so a
+	// short record on an interactive stream does not wait for more input.
+	private boolean compactAhead() throws IOException {
+		int length = 0;
+		while (length <= 81) {
+			if (position + length == limit) {
+				if (limit == buffer.length) {
+					compactBuffer();
+				}
+				if (!fillMore()) {
+					break;
+				}
+				continue;
+			}
+			byte b = buffer[position + length];
+			if ((b < '0' || b > '9') && b != '.') {
+				break;
+			}
+			length++;
+		}
+		return length == 81;
+	}
+
+	private boolean fill() throws IOException {
+		position = 0;
+		limit = 0;
+		return fillMore();
+	}
+
+	private void compactBuffer() {
+		System.arraycopy(buffer, position, buffer, 0, limit - position);
+		limit -= position;
+		position = 0;
+	}
+
+	private boolean fillMore() throws IOException {
+		int read = in.read(buffer, limit, buffer.length - limit);
+		if (read <= 0) {
+			return false;
+		}
+		limit += read;
+		return true;
+	}
+
+}
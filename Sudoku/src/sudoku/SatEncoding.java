@@ -0,0 +1,101 @@
+package sudoku;
+
+/**
+ * CNF encoding of a board for CdclSolver. There is one variable per
+ * (cell, digit), numbered cell * size + digit - 1, with exactly-one
+ * constraints per cell and per (row, digit), (column, digit) and
+ * (box, digit): one at-least-one clause plus pairwise at-most-one clauses.
+ * 
+ * The givens are propagated first and every digit that is no longer a
+ * candidate becomes a false unit, so clauses are only generated over the
+ * remaining candidates. On large boards this keeps the pairwise clauses,
+ * which grow with the square of the board size, to a fraction of the full
+ * encoding.
+ */
+final class SatEncoding {
+
+	private final Geometry geometry;
+
+	SolverStats stats = new SolverStats();
+
+	// Watched by the CDCL search when set
+	SolveBudget budget;
+
+	SatEncoding(Geometry geometry) {
+		this.geometry = geometry;
+	}
+
+	/**
+	 * Solves vals in place. Returns false if the givens conflict or there is
+	 * no solution.
+	 */
+	boolean solve(int[][] vals) {
+		Propagator board = new Propagator(geometry);
+		if (!board.load(vals)) {
+			stats = board.stats;
+			stats.finish(false);
+			return false;
+		}
+		CdclSolver solver = encode(board);
+		solver.stats.watch(budget);
+		boolean solved = solver.solve();
+		stats = solver.stats;
+		if (solved) {
+			int size = geometry.size;
+			for (int cell = 0; cell < geometry.cells; cell++) {
+				for (int digit = 1; digit <= size; digit++) {
+					if (solver.value(variable(cell, digit), true)) {
+						vals[geometry.rowOf[cell]][geometry.colOf[cell]] = digit;
+					}
+				}
+			}
+		}
+		return solved;
+	}
+
+	int variable(int cell, int digit) {
+		return cell * geometry.size + digit - 1;
+	}
+
+	private CdclSolver encode(Propagator board) {
+		int size = geometry.size;
+		CdclSolver solver = new CdclSolver(geometry.cells * size);
+		int[] clause = new int[size];
+		for (int cell = 0; cell < geometry.cells; cell++) {
+			long domain = board.domains[cell];
+			int n = 0;
+			for (int digit = 1; digit <= size; digit++) {
+				if ((domain & (1L << digit)) != 0) {
+					clause[n++] = CdclSolver.lit(variable(cell, digit), true);
+				} else {
+					solver.addClause(CdclSolver.lit(variable(cell, digit), false));
+				}
+			}
+			exactlyOne(solver, clause, n);
+		}
+		for (int[] unit : geometry.units) {
+			for (int digit = 1; digit <= size; digit++) {
+				int n = 0;
+				for (int cell : unit) {
+					if ((board.domains[cell] & (1L << digit)) != 0) {
+						clause[n++] = CdclSolver.lit(variable(cell, digit), true);
+					}
+				}
+				exactlyOne(solver, clause, n);
+			}
+		}
+		return solver;
+	}
+
+	private static void exactlyOne(CdclSolver solver, int[] literals, int n) {
+		int[] atLeastOne = new int[n];
+		System.arraycopy(literals, 0, atLeastOne, 0, n);
+		solver.addClause(atLeastOne);
+		for (int i = 0; i < n; i++) {
+			for (int j = i + 1; j < n; j++) {
+				solver.addClause(literals[i] ^ 1, literals[j] ^ 1);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,128 @@
+package sudoku;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded least-recently-used cache from the canonical form of a puzzle to
+ * the solution of that canonical puzzle. A puzzle equivalent to one solved
+ * before, under any of the symmetries in Canonical, is answered by mapping
+ * the cached solution back through its own transform instead of searching.
+ * Only solvable puzzles are cached. Safe for use by several threads, and
+ * misses are solved concurrently, each on its own solver.
+ */
+public final class SolutionCache {
+
+	private final Map<String, int[]> solutions;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	public SolutionCache(final int capacity) {
+		solutions = new LinkedHashMap<String, int[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+				if (size() > capacity) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Solves vals in place with strategy, or from the cache.
+	 */
+	public boolean solve(int[][] vals, Sudoku.Strategy strategy) {
+		int size = vals.length;
+		int[] cells = new int[size * size];
+		for (int i = 0; i < size; i++) {
+			System.arraycopy(vals[i], 0, cells, i * size, size);
+		}
+		Canonical form = Canonical.of(size, cells);
+		int[] solution = get(form);
+		if (solution == null) {
+			int[] canonical = form.toCanonical(cells);
+			int[][] board = new int[size][size];
+			for (int i = 0; i < size; i++) {
+				System.arraycopy(canonical, i * size, board[i], 0, size);
+			}
+			if (!Sudoku.solve(board, strategy)) {
+				return false;
+			}
+			solution = new int[size * size];
+			for (int i = 0; i < size; i++) {
+				System.arraycopy(board[i], 0, solution, i * size, size);
+			}
+			put(form, solution);
+		}
+		form.fromCanonical(solution, cells);
+		for (int i = 0; i < size; i++) {
+			System.arraycopy(cells, i * size, vals[i], 0, size);
+		}
+		return true;
+	}
+
+	/**
+	 * Solves the puzzle in cells (row-major) in place with board, or from the
+	 * cache.
+	 */
+	boolean solve(int[] cells, Propagator board) {
+		Canonical form = Canonical.of(board.geometry.size, cells);
+		int[] solution = get(form);
+		if (solution == null) {
+			if (!board.load(form.toCanonical(cells)) || !board.solve()) {
+				return false;
+			}
+			solution = board.values.clone();
+			put(form, solution);
+		}
+		form.fromCanonical(solution, cells);
+		return true;
+	}
+
+	/**
+	 * Cached solution of the canonical puzzle of form, or null.
+	 */
+	synchronized int[] get(Canonical form) {
+		int[] solution = solutions.get(form.key);
+		if (solution == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return solution;
+	}
+
+	synchronized void put(Canonical form, int[] canonicalSolution) {
+		solutions.put(form.key, canonicalSolution);
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized int size() {
+		return solutions.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		long lookups = hits + misses;
+		return String.format("hits: %d, misses: %d, hit rate: %.1f%%, evictions: %d, entries: %d", hits, misses,
+				lookups == 0 ? 0.0 : 100.0 * hits / lookups, evictions, solutions.size());
+	}
+
+}
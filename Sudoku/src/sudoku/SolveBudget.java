@@ -0,0 +1,111 @@
+package sudoku;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deadline and cancellation token for Sudoku.solveWithin. Searches look at the
+ * budget every checkNodes nodes through their SolverStats, so a check costs
+ * one comparison per node plus a clock read per interval. Once the deadline
+ * has passed or cancel was called, the search unwinds and solve returns
+ * TIMEOUT or CANCELLED with the counters gathered so far.
+ * 
+ * A budget may be shared by several solves, e.g. to cancel a whole batch.
+ */
+public final class SolveBudget {
+
+	/**
+	 * Receives the running counters of a search at most once per progress
+	 * interval, on the searching thread.
+	 */
+	public interface Progress {
+		void progress(SolverStats stats);
+	}
+
+	static final int DEFAULT_CHECK_NODES = 1024;
+
+	private final long deadline;
+	private final boolean timed;
+	private volatile boolean cancelled;
+
+	int checkNodes = DEFAULT_CHECK_NODES;
+
+	private Progress progress;
+	private long progressNanos;
+	private volatile long nextProgress;
+
+	/**
+	 * Budget without a deadline that only ends through cancel.
+	 */
+	public SolveBudget() {
+		deadline = 0;
+		timed = false;
+	}
+
+	public SolveBudget(long timeout, TimeUnit unit) {
+		deadline = System.nanoTime() + unit.toNanos(timeout);
+		timed = true;
+	}
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public boolean isExpired() {
+		return cancelled || (timed && System.nanoTime() - deadline >= 0);
+	}
+
+	/**
+	 * Number of search nodes between two looks at the clock.
+	 */
+	public void setCheckNodes(int checkNodes) {
+		if (checkNodes < 1) {
+			throw new IllegalArgumentException("checkNodes must be positive");
+		}
+		this.checkNodes = checkNodes;
+	}
+
+	public void setProgress(Progress progress, long interval, TimeUnit unit) {
+		this.progress = progress;
+		progressNanos = unit.toNanos(interval);
+		nextProgress = System.nanoTime() + progressNanos;
+	}
+
+	// Called by SolverStats every checkNodes nodes
+	void check(SolverStats stats, long now) {
+		if (cancelled || (timed && now - deadline >= 0)) {
+			throw new Expired(stats);
+		}
+		if (progress != null && now - nextProgress >= 0) {
+			nextProgress = now + progressNanos;
+			progress.progress(stats);
+		}
+	}
+
+	/**
+	 * Thrown through the search when the budget ran out, carrying the
+	 * counters of the search that noticed it. cancelled is set when the
+	 * solve was stopped by an interrupt rather than by its budget.
+	 */
+	static final class Expired extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		final transient SolverStats stats;
+		final boolean cancelled;
+
+		Expired(SolverStats stats) {
+			this(stats, false);
+		}
+
+		Expired(SolverStats stats, boolean cancelled) {
+			super(cancelled ? "Solve interrupted" : "Solve budget expired", null, false, false);
+			this.stats = stats;
+			this.cancelled = cancelled;
+		}
+	}
+
+}
@@ -0,0 +1,136 @@
+package sudoku;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Closed-loop load generator for SolveServer. Every connection sends the
+ * puzzles of a file one at a time, repeated, and waits for each reply
+ * before sending the next, so the number of connections is the number of
+ * requests in flight. Prints throughput and the latency seen by the client
+ * next to the solve time the server reported.
+ * 
+ * Usage: SolveClient puzzles.txt [connections] [repeat] [port]
+ */
+public class SolveClient {
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 1) {
+			System.out.println("Usage: SolveClient puzzles.txt [connections] [repeat] [port]");
+			return;
+		}
+		List<int[][]> puzzles = SudokuBenchmark.load(args[0]);
+		int connections = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int repeat = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		int port = args.length > 3 ? Integer.parseInt(args[3]) : SolveServer.DEFAULT_PORT;
+
+		List<String> requests = new ArrayList<String>();
+		for (int[][] puzzle : puzzles) {
+			int size = puzzle.length;
+			StringBuilder text = new StringBuilder();
+			text.append(size).append('\n');
+			for (int[] row : puzzle) {
+				for (int j = 0; j < size; j++) {
+					text.append(row[j]).append(j == size - 1 ? '\n' : ' ');
+				}
+			}
+			requests.add(text.toString());
+		}
+
+		List<Connection> clients = new ArrayList<Connection>();
+		long start = System.nanoTime();
+		for (int c = 0; c < connections; c++) {
+			Connection client = new Connection(port, requests, repeat);
+			client.start();
+			clients.add(client);
+		}
+		int perConnection = requests.size() * repeat;
+		long[] latencies = new long[connections * perConnection];
+		double solveMicros = 0;
+		int count = 0;
+		int solved = 0;
+		int timeouts = 0;
+		for (Connection client : clients) {
+			client.join();
+			if (client.failure != null) {
+				throw client.failure;
+			}
+			System.arraycopy(client.latencies, 0, latencies, count, perConnection);
+			count += perConnection;
+			solveMicros += client.solveMicros;
+			solved += client.solved;
+			timeouts += client.timeouts;
+		}
+		long elapsed = System.nanoTime() - start;
+
+		Arrays.sort(latencies);
+		System.out.println("Requests: " + count + ", solved: " + solved + ", timeouts: " + timeouts + ", connections: "
+				+ connections);
+		System.out.printf("Elapsed: %.3f s, throughput: %.1f puzzles/sec%n", elapsed / 1e9, count / (elapsed / 1e9));
+		if (count > 0) {
+			System.out.printf("Client latency p50: %.1f us, p99: %.1f us, max: %.1f us, server solve mean: %.1f us%n",
+					latencies[count / 2] / 1e3, latencies[Math.min(count - 1, (int) (count * 0.99))] / 1e3,
+					latencies[count - 1] / 1e3, solveMicros / count);
+		}
+	}
+
+	private static final class Connection extends Thread {
+		private final int port;
+		private final List<String> requests;
+		final long[] latencies;
+		double solveMicros;
+		int solved;
+		int timeouts;
+		IOException failure;
+
+		Connection(int port, List<String> requests, int repeat) {
+			this.port = port;
+			this.requests = requests;
+			latencies = new long[requests.size() * repeat];
+		}
+
+		@Override
+		public void run() {
+			try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+					Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "US-ASCII"));
+					BufferedReader reader = new BufferedReader(
+							new InputStreamReader(socket.getInputStream(), "US-ASCII"))) {
+				socket.setTcpNoDelay(true);
+				for (int i = 0; i < latencies.length; i++) {
+					String request = requests.get(i % requests.size());
+					long sent = System.nanoTime();
+					writer.write(request);
+					writer.flush();
+					String status = reader.readLine();
+					if (status == null || status.startsWith("error")) {
+						throw new IOException("Server replied " + status);
+					}
+					String[] fields = status.split(" ");
+					if (fields[0].equals("solved")) {
+						solved++;
+						int size = Integer.parseInt(reader.readLine().trim());
+						for (int line = 0; line < size; line++) {
+							reader.readLine();
+						}
+					} else if (fields[0].equals("timeout")) {
+						timeouts++;
+					}
+					latencies[i] = System.nanoTime() - sent;
+					solveMicros += Double.parseDouble(fields[1]);
+				}
+			} catch (IOException exception) {
+				failure = exception;
+			}
+		}
+	}
+
+}
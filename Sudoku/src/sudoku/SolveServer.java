@@ -0,0 +1,218 @@
+package sudoku;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Resident solver that keeps the JIT warm between puzzles. Requests are
+ * puzzles in either format BatchSolver reads, sent back to back on stdin or
+ * on a localhost socket; requests from all connections share one worker
+ * pool with a reusable Propagator per thread. Each solve may take at most
+ * the timeout, counted from when a worker picks it up, so a pathological
+ * puzzle cannot hold a worker for good. Every connection gets one reply per
+ * request, in request order:
+ * 
+ * <pre>
+ * solved SOLVE_US LATENCY_US      followed by the solution in the request's format
+ * unsolvable SOLVE_US LATENCY_US
+ * timeout SOLVE_US LATENCY_US
+ * error MESSAGE                   then the connection is closed
+ * </pre>
+ * 
+ * SOLVE_US is the time spent solving and LATENCY_US the time from reading
+ * the request to writing its reply, both in microseconds. Replies are flushed
+ * whenever no earlier request is still pending.
+ * 
+ * Usage: SolveServer [port | -] [threads] [timeout ms]
+ */
+public class SolveServer {
+
+	static final int DEFAULT_PORT = 7181;
+
+	// Requests a connection may have in flight before its reader blocks
+	private static final int WINDOW = 1024;
+
+	static final long DEFAULT_TIMEOUT_MS = 10000;
+
+	public static void main(String[] args) throws IOException {
+		String where = args.length > 0 ? args[0] : Integer.toString(DEFAULT_PORT);
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		long timeoutMillis = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_TIMEOUT_MS;
+		final long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		if (where.equals("-")) {
+			serve(System.in, System.out, pool, timeoutNanos);
+			pool.shutdown();
+			return;
+		}
+		ServerSocket server = new ServerSocket(Integer.parseInt(where), 50, InetAddress.getLoopbackAddress());
+		System.out.println("Listening on " + server.getLocalSocketAddress() + ", threads: " + threads + ", timeout: "
+				+ timeoutMillis + " ms");
+		while (true) {
+			final Socket socket = server.accept();
+			socket.setTcpNoDelay(true);
+			new Thread("connection " + socket.getPort()) {
+				@Override
+				public void run() {
+					try {
+						serve(socket.getInputStream(), socket.getOutputStream(), pool, timeoutNanos);
+					} catch (IOException exception) {
+						// Client went away
+					} finally {
+						try {
+							socket.close();
+						} catch (IOException exception) {
+							// Already closed
+						}
+					}
+				}
+			}.start();
+		}
+	}
+
+	/**
+	 * Answers every request read from in on out until in ends, a reply fails
+	 * or the client goes away. Each solve gets timeoutNanos, 0 for no limit.
+	 */
+	static void serve(final InputStream in, OutputStream out, ExecutorService pool, long timeoutNanos)
+			throws IOException {
+		final BlockingQueue<Request> pending = new LinkedBlockingQueue<Request>(WINDOW);
+		final Writer writer = new OutputStreamWriter(new BufferedOutputStream(out, 1 << 16), "US-ASCII");
+		final AtomicBoolean stopped = new AtomicBoolean();
+		Thread replies = new Thread("replies") {
+			@Override
+			public void run() {
+				try {
+					reply(pending, writer, in, stopped);
+				} catch (InterruptedException exception) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		replies.setDaemon(true);
+		replies.start();
+
+		PuzzleReader reader = new PuzzleReader(in);
+		boolean ended = false;
+		try {
+			try {
+				while (!ended) {
+					Request request = new Request();
+					try {
+						request.puzzle = BatchSolver.read(reader);
+					} catch (RuntimeException exception) {
+						request.error = exception.getMessage();
+					}
+					request.received = System.nanoTime();
+					if (request.puzzle != null) {
+						request.puzzle.timeoutNanos = timeoutNanos;
+						request.result = pool.submit(request.puzzle);
+					}
+					ended = request.puzzle == null;
+					pending.put(request);
+				}
+			} finally {
+				if (!ended) {
+					// Reading failed; the replies thread keeps taking entries
+					// until this one, so the put cannot block for good
+					pending.put(new Request());
+				}
+				replies.join();
+			}
+		} catch (IOException exception) {
+			// Expected when the replies thread closed in after a failed reply
+			if (!stopped.get()) {
+				throw exception;
+			}
+		} catch (InterruptedException exception) {
+			replies.interrupt();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static final class Request {
+		BatchSolver.Puzzle puzzle;
+		Future<BatchSolver.Result> result;
+		String error;
+		long received;
+	}
+
+	// Writes replies in request order until the end-of-input entry. After an
+	// error reply, or once the client stops accepting replies, in is closed so
+	// the reader stops, and the remaining entries are only drained.
+	private static void reply(BlockingQueue<Request> pending, Writer writer, InputStream in,
+			AtomicBoolean stopped) throws InterruptedException {
+		boolean open = true;
+		while (true) {
+			Request request = pending.take();
+			if (request.puzzle == null) {
+				if (open) {
+					try {
+						if (request.error != null) {
+							writer.write("error " + request.error + "\n");
+						}
+						writer.flush();
+					} catch (IOException exception) {
+						// Client went away
+					}
+				}
+				return;
+			}
+			if (!open) {
+				request.result.cancel(false);
+				continue;
+			}
+			try {
+				BatchSolver.Result result;
+				try {
+					result = request.result.get();
+				} catch (ExecutionException exception) {
+					writer.write("error " + exception.getCause() + "\n");
+					writer.flush();
+					open = false;
+					stop(in, stopped);
+					continue;
+				}
+				long latency = System.nanoTime() - request.received;
+				String status = result.solved ? "solved" : result.timedOut ? "timeout" : "unsolvable";
+				writer.write(String.format(Locale.ROOT, "%s %.1f %.1f\n", status, result.nanos / 1e3, latency / 1e3));
+				if (result.solved) {
+					BatchSolver.write(writer, result);
+				}
+				if (pending.isEmpty()) {
+					writer.flush();
+				}
+			} catch (IOException exception) {
+				// Client went away
+				open = false;
+				stop(in, stopped);
+			}
+		}
+	}
+
+	private static void stop(InputStream in, AtomicBoolean stopped) {
+		stopped.set(true);
+		try {
+			in.close();
+		} catch (IOException exception) {
+			// Already closed
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+package sudoku;
+
+/**
+ * Search-effort counters for one solve. An instance is owned by a single
+ * search thread and only holds primitives, so counting costs a field
+ * increment; parallel searches give each task its own instance and merge
+ * them once at the end.
+ * 
+ * Time per depth band is sampled rather than measured: every SAMPLE_NODES
+ * nodes the time since the previous sample is charged to the band of the
+ * current depth. Band b holds depths [2^(b-1), 2^b), band 0 is the root.
+ * 
+ * A search that watches a SolveBudget checks it from node as well, see
+ * SolveBudget.
+ */
+public final class SolverStats {
+
+	static final int BANDS = 12;
+	private static final long SAMPLE_NODES = 64;
+
+	boolean solved;
+	long nodes;
+	long backtracks;
+	long propagations;
+	int maxDepth;
+	long elapsedNanos;
+	final long[] bandNodes = new long[BANDS];
+	final long[] bandNanos = new long[BANDS];
+
+	private long started;
+	private long lastSample;
+
+	SolveBudget budget;
+	private long nextCheck = Long.MAX_VALUE;
+
+	/**
+	 * Makes node check budget, or stop checking for null. Kept across reset.
+	 */
+	void watch(SolveBudget budget) {
+		this.budget = budget;
+		nextCheck = budget == null ? Long.MAX_VALUE : nodes + budget.checkNodes;
+	}
+
+	void reset() {
+		solved = false;
+		nodes = 0;
+		backtracks = 0;
+		propagations = 0;
+		maxDepth = 0;
+		elapsedNanos = 0;
+		for (int b = 0; b < BANDS; b++) {
+			bandNodes[b] = 0;
+			bandNanos[b] = 0;
+		}
+		started = System.nanoTime();
+		lastSample = started;
+		nextCheck = budget == null ? Long.MAX_VALUE : budget.checkNodes;
+	}
+
+	/**
+	 * Counts a search node at the given depth.
+	 */
+	void node(int depth) {
+		nodes++;
+		if (depth > maxDepth) {
+			maxDepth = depth;
+		}
+		int band = band(depth);
+		bandNodes[band]++;
+		if (nodes % SAMPLE_NODES == 0) {
+			long now = System.nanoTime();
+			bandNanos[band] += now - lastSample;
+			lastSample = now;
+		}
+		if (nodes >= nextCheck) {
+			nextCheck = nodes + budget.checkNodes;
+			long now = System.nanoTime();
+			elapsedNanos = now - started;
+			budget.check(this, now);
+		}
+	}
+
+	/**
+	 * Stops the clock; the time since the last sample goes to the root band.
+	 * Synchronized with merge, as tasks of an expired parallel search may
+	 * still be merging into the caller's instance.
+	 */
+	synchronized void finish(boolean solved) {
+		long now = System.nanoTime();
+		bandNanos[0] += now - lastSample;
+		elapsedNanos = now - started;
+		this.solved = solved;
+	}
+
+	/**
+	 * Adds the counters of other, from a task of the same solve.
+	 */
+	synchronized void merge(SolverStats other) {
+		nodes += other.nodes;
+		backtracks += other.backtracks;
+		propagations += other.propagations;
+		maxDepth = Math.max(maxDepth, other.maxDepth);
+		for (int b = 0; b < BANDS; b++) {
+			bandNodes[b] += other.bandNodes[b];
+			bandNanos[b] += other.bandNanos[b];
+		}
+	}
+
+	static int band(int depth) {
+		return Math.min(BANDS - 1, 32 - Integer.numberOfLeadingZeros(depth));
+	}
+
+	public boolean isSolved() {
+		return solved;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	public long getBacktracks() {
+		return backtracks;
+	}
+
+	public long getPropagations() {
+		return propagations;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Time of the finished solve; while a budgeted search runs, the time up
+	 * to its last budget check.
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * Sampled time spent at depths in band b, see the class comment.
+	 */
+	public long getBandNanos(int b) {
+		return bandNanos[b];
+	}
+
+	public long getBandNodes(int b) {
+		return bandNodes[b];
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		text.append("solved: ").append(solved).append(", nodes: ").append(nodes).append(", backtracks: ")
+				.append(backtracks).append(", propagations: ").append(propagations).append(", max depth: ")
+				.append(maxDepth).append(String.format(", time: %.3f ms", elapsedNanos / 1e6));
+		for (int b = 0; b < BANDS; b++) {
+			if (bandNodes[b] > 0) {
+				int low = b == 0 ? 0 : 1 << (b - 1);
+				text.append(String.format("%n  depth %4d+: %10d nodes %10.3f ms", low, bandNodes[b],
+						bandNanos[b] / 1e6));
+			}
+		}
+		return text.toString();
+	}
+
+}
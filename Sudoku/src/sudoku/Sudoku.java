@@ -1,12 +1,17 @@
 package sudoku;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import csp.Monitor;
+import csp.Problem;
+import csp.Solver;
 
 /**
  * 
@@ -15,57 +20,176 @@ import java.util.Scanner;
  */
 public class Sudoku {
 
-	private static int boardSize = 0;
-	private static int partitionSize = 0;
+	/**
+	 * How the board is searched.
+	 */
+	public enum Strategy {
+		/**
+		 * Walks the empty cells in row-major order.
+		 */
+		STATIC,
+		/**
+		 * Takes the cell with the fewest remaining candidates and breaks ties by
+		 * the number of unassigned peers.
+		 */
+		MRV,
+		/**
+		 * Runs forward checking plus naked and hidden singles after every
+		 * assignment.
+		 */
+		PROPAGATE,
+		/**
+		 * Solves the exact-cover form with Dancing Links.
+		 */
+		DLX,
+		/**
+		 * Splits the propagating search across a fork/join pool.
+		 */
+		PARALLEL,
+		/**
+		 * Adds conflict-directed backjumping and nogood learning to the same
+		 * singles propagation as PROPAGATE.
+		 */
+		BACKJUMP,
+		/**
+		 * Encodes the board as CNF for the built-in clause learning solver.
+		 */
+		SAT,
+		/**
+		 * MRV search on an explicit stack, for threads with small stacks.
+		 */
+		ITERATIVE,
+		/**
+		 * Races several solver configurations on separate threads.
+		 */
+		PORTFOLIO,
+		/**
+		 * States the board as all-different constraints for the generic
+		 * csp.Solver. Same search tree as PROPAGATE, but still about 1.2x slower
+		 * on search-heavy boards such as generated 9x9 and 16x16 hard ones.
+		 */
+		CSP,
+		/**
+		 * PROPAGATE trying the least constraining digit first.
+		 */
+		LCV,
+		/**
+		 * PROPAGATE trying the digit with the smallest impact learned during the
+		 * search first.
+		 */
+		IMPACT
+	}
+
+	/**
+	 * Result of a solve under a SolveBudget.
+	 */
+	public enum Outcome {
+		SOLVED, UNSOLVABLE, TIMEOUT, CANCELLED
+	}
+
+	// Search effort of the last solve on each thread, for comparing strategies
+	private static final ThreadLocal<SolverStats> LAST_STATS = new ThreadLocal<SolverStats>() {
+		@Override
+		protected SolverStats initialValue() {
+			return new SolverStats();
+		}
+	};
+
+	// Boards reused by the STATIC strategy, per thread and size
+	private static final ThreadLocal<FlatBoard[]> FLAT_BOARDS = new ThreadLocal<FlatBoard[]>() {
+		@Override
+		protected FlatBoard[] initialValue() {
+			return new FlatBoard[64];
+		}
+	};
+
+	// Constraint model of the CSP strategy, per size: one variable per cell
+	// with the digits as values, and an all-different per unit
+	private static final Problem[] cspModels = new Problem[64];
+
+	// Solvers reused by the CSP strategy, per thread and size
+	private static final ThreadLocal<Solver[]> CSP_SOLVERS = new ThreadLocal<Solver[]>() {
+		@Override
+		protected Solver[] initialValue() {
+			return new Solver[64];
+		}
+	};
 
 	public static void main(String[] args) {
 		String filename = "sudoku9Hard.txt";
+		Strategy strategy = Strategy.STATIC;
+		SolveBudget budget = null;
+		if (args.length > 0) {
+			filename = args[0];
+		}
+		if (args.length > 1) {
+			strategy = Strategy.valueOf(args[1].toUpperCase());
+		}
+		if (args.length > 2) {
+			budget = new SolveBudget(Long.parseLong(args[2]), TimeUnit.MILLISECONDS);
+			budget.setProgress(new SolveBudget.Progress() {
+				@Override
+				public void progress(SolverStats progress) {
+					System.out.printf("  %.1f s: %d nodes, %d backtracks, max depth %d%n",
+							progress.getElapsedNanos() / 1e9, progress.getNodes(), progress.getBacktracks(),
+							progress.getMaxDepth());
+				}
+			}, 1, TimeUnit.SECONDS);
+		}
 		File inputFile = new File(filename);
-		Scanner input = null;
+		PuzzleReader input = null;
 		int[][] vals = null;
+		KillerCages cages = null;
 
-		ArrayList<Variable> vars = new ArrayList<Variable>();
-
-		int temp = 0;
+		int boardSize = 0;
 		int count = 0;
 
 		try {
-			input = new Scanner(inputFile);
-			temp = input.nextInt();
-			boardSize = temp;
-			partitionSize = (int) Math.sqrt(boardSize);
-			System.out.println("Boardsize: " + temp + "x" + temp);
+			input = new PuzzleReader(new FileInputStream(inputFile));
+			int[] cells = input.read(null);
+			if (cells == null) {
+				throw new RuntimeException("Incorrect number of inputs.");
+			}
+			boardSize = input.size;
+			count = input.count;
+			System.out.println("Boardsize: " + boardSize + "x" + boardSize);
 			vals = new int[boardSize][boardSize];
 
 			System.out.println("Input:");
-			int i = 0;
-			int j = 0;
-			while (input.hasNext()) {
-				temp = input.nextInt();
-				count++;
-				System.out.printf("%3d", temp);
-				vals[i][j] = temp;
-				if (temp == 0) {
-					vars.add(new Variable(i, j));
-				}
-				j++;
-				if (j == boardSize) {
-					j = 0;
-					i++;
+			for (int k = 0; k < count; k++) {
+				int i = k / boardSize;
+				int j = k % boardSize;
+				System.out.printf("%3d", cells[k]);
+				vals[i][j] = cells[k];
+				if (j == boardSize - 1) {
 					System.out.println();
 				}
-				if (j == boardSize) {
-					break;
-				}
+			}
+			if (count == boardSize * boardSize && input.hasNext()) {
+				cages = KillerCages.read(input, Geometry.forSize(boardSize));
+				System.out.println("Cages: " + cages.sums.length);
 			}
 			input.close();
 		} catch (FileNotFoundException exception) {
 			System.out.println("Input file not found: " + filename);
+			return;
+		} catch (IOException exception) {
+			exception.printStackTrace();
+			return;
 		}
 		if (count != boardSize * boardSize)
 			throw new RuntimeException("Incorrect number of inputs.");
 
-		boolean solved = solve(vars, vals, 0);
+		if (cages != null && strategy != Strategy.PROPAGATE && strategy != Strategy.LCV
+				&& strategy != Strategy.IMPACT) {
+			System.out.println("Cages are only enforced by the PROPAGATE, LCV and IMPACT strategies, using PROPAGATE "
+					+ "instead of " + strategy);
+			strategy = Strategy.PROPAGATE;
+		}
+
+		Outcome outcome = solveWithin(vals, strategy, cages, budget);
+		boolean solved = outcome == Outcome.SOLVED;
+		System.out.println("Strategy: " + strategy + ", " + outcome + ", " + getStats());
 
 		// Write result to file
 		File file = new File(filename.substring(0, filename.length() - 4) + "Solution.txt");
@@ -107,77 +231,315 @@ public class Sudoku {
 
 	}
 
-	public static boolean solve(ArrayList<Variable> assignments, int[][] vals, int varIndex) {
+	/**
+	 * Solves vals in place with the given strategy.
+	 */
+	public static boolean solve(int[][] vals, Strategy strategy) {
+		return solve(vals, strategy, null);
+	}
+
+	/**
+	 * Solves vals in place unless budget runs out first. After TIMEOUT or
+	 * CANCELLED, vals may hold a partial assignment and getStats, on the
+	 * calling thread, has the effort spent so far.
+	 */
+	public static Outcome solveWithin(int[][] vals, Strategy strategy, SolveBudget budget) {
+		return solveWithin(vals, strategy, null, budget);
+	}
 
-		if (varIndex >= assignments.size()) {
-			return false;
+	static Outcome solveWithin(int[][] vals, Strategy strategy, KillerCages cages, SolveBudget budget) {
+		try {
+			return solve(vals, strategy, cages, budget) ? Outcome.SOLVED : Outcome.UNSOLVABLE;
+		} catch (SolveBudget.Expired expired) {
+			expired.stats.finish(false);
+			LAST_STATS.set(expired.stats);
+			return expired.cancelled || budget.isCancelled() ? Outcome.CANCELLED : Outcome.TIMEOUT;
 		}
+	}
 
-		Variable currentVar = assignments.get(varIndex);
-		while (currentVar.value <= 9) {
+	/**
+	 * Solves vals in place and returns the search effort it took; isSolved
+	 * on the result tells whether vals now holds a solution. Every solve
+	 * gets a SolverStats of its own, so the result stays valid while other
+	 * solves run or follow.
+	 */
+	public static SolverStats solveWithStats(int[][] vals, Strategy strategy) {
+		solve(vals, strategy, null);
+		return LAST_STATS.get();
+	}
 
-			if (consistent(currentVar, vals)) {
+	/**
+	 * Search effort of the last solve on the calling thread.
+	 */
+	public static SolverStats getStats() {
+		return LAST_STATS.get();
+	}
 
-				vals[currentVar.row][currentVar.col] = currentVar.value;
-				if (varIndex == assignments.size() - 1) {
-					return true;
-				}
+	static boolean solve(int[][] vals, Strategy strategy, KillerCages cages) {
+		return solve(vals, strategy, cages, null);
+	}
 
-				if (solve(assignments, vals, varIndex + 1)) {
-					return true;
-				}
-			}
-			currentVar.value++;
+	private static boolean solve(int[][] vals, Strategy strategy, KillerCages cages, SolveBudget budget) {
+		switch (strategy) {
+		case MRV:
+			return solveMrv(vals, budget);
+		case PROPAGATE:
+			return solvePropagating(vals, cages, budget, Propagator.ValueOrder.ASCENDING);
+		case LCV:
+			return solvePropagating(vals, cages, budget, Propagator.ValueOrder.LEAST_CONSTRAINING);
+		case IMPACT:
+			return solvePropagating(vals, cages, budget, Propagator.ValueOrder.IMPACT);
+		case DLX:
+			return solveDancingLinks(vals, budget);
+		case PARALLEL:
+			return solveParallel(vals, budget);
+		case BACKJUMP:
+			return solveBackjumping(vals, budget);
+		case SAT:
+			return solveSat(vals, budget);
+		case ITERATIVE:
+			return solveIterative(vals, budget);
+		case PORTFOLIO:
+			return solvePortfolio(vals, budget);
+		case CSP:
+			return solveCsp(vals, budget);
+		default:
+			return solveStatic(vals, budget);
 		}
+	}
 
-		currentVar.value = 1;
-		vals[currentVar.row][currentVar.col] = 0;
+	/**
+	 * Solves vals in place, filling the empty cells in row-major order. Uses
+	 * one FlatBoard per thread and board size, kept across calls; only its
+	 * SolverStats is new for each solve, as the caller may keep it.
+	 */
+	private static boolean solveStatic(int[][] vals, SolveBudget budget) {
+		FlatBoard[] flatBoards = FLAT_BOARDS.get();
+		FlatBoard board = flatBoards[vals.length];
+		if (board == null) {
+			board = new FlatBoard(Geometry.forSize(vals.length));
+			flatBoards[vals.length] = board;
+		}
+		board.stats = new SolverStats();
+		board.stats.watch(budget);
+		boolean solved = board.load(vals) && board.solve();
+		if (solved) {
+			board.copyTo(vals);
+		}
+		LAST_STATS.set(board.stats);
+		return solved;
+	}
 
-		return false;
+	/**
+	 * Solves vals in place, always branching on the most constrained empty
+	 * cell, see MrvSolver.
+	 */
+	public static boolean solveMrv(int[][] vals) {
+		return solveMrv(vals, null);
 	}
 
-	public static boolean consistent(Variable temp, int[][] vals) {
-		int val = temp.value;
+	static boolean solveMrv(int[][] vals, SolveBudget budget) {
+		MrvSolver solver = new MrvSolver(Geometry.forSize(vals.length));
+		solver.stats.watch(budget);
+		boolean solved = solver.solve(vals);
+		LAST_STATS.set(solver.stats);
+		return solved;
+	}
 
-		// check column
-		for (int i = 0; i < vals.length; i++) {
-			if (vals[i][temp.col] == val) {
-				return false;
-			}
+	/**
+	 * Solves vals in place using the propagation engine. Givens that already
+	 * conflict are rejected before any search.
+	 */
+	public static boolean solvePropagating(int[][] vals) {
+		return solvePropagating(vals, null, null, Propagator.ValueOrder.ASCENDING);
+	}
+
+	static boolean solvePropagating(int[][] vals, KillerCages cages, SolveBudget budget,
+			Propagator.ValueOrder order) {
+		Propagator propagator = new Propagator(Geometry.forSize(vals.length));
+		propagator.setValueOrder(order);
+		propagator.cages = cages;
+		propagator.stats.watch(budget);
+		boolean solved = propagator.load(vals) && propagator.solve();
+		LAST_STATS.set(propagator.stats);
+		if (solved) {
+			propagator.copyTo(vals);
+		}
+		return solved;
+	}
+
+	/**
+	 * Counts the solutions of vals, up to limit, without modifying it. A
+	 * limit of 2 is enough to tell whether a puzzle is unique.
+	 */
+	public static long countSolutions(int[][] vals, long limit) {
+		Propagator propagator = new Propagator(Geometry.forSize(vals.length));
+		if (!propagator.load(vals)) {
+			return 0;
 		}
+		return propagator.countSolutions(limit);
+	}
+
+	/**
+	 * Same as countSolutions, with subtrees counted on all available cores.
+	 */
+	public static long countSolutionsParallel(int[][] vals, long limit) {
+		return new ParallelSolver(ForkJoinPool.commonPool(), 8).countSolutions(vals, limit);
+	}
+
+	public static boolean hasUniqueSolution(int[][] vals) {
+		return countSolutions(vals, 2) == 1;
+	}
+
+	/**
+	 * Solves vals in place as an exact-cover problem.
+	 */
+	public static boolean solveDancingLinks(int[][] vals) {
+		return solveDancingLinks(vals, null);
+	}
+
+	static boolean solveDancingLinks(int[][] vals, SolveBudget budget) {
+		DancingLinks links = new DancingLinks(Geometry.forSize(vals.length));
+		links.stats.watch(budget);
+		boolean solved = links.solve(vals);
+		LAST_STATS.set(links.stats);
+		return solved;
+	}
+
+	/**
+	 * Solves vals in place with conflict-directed backjumping.
+	 */
+	public static boolean solveBackjumping(int[][] vals) {
+		return solveBackjumping(vals, null);
+	}
+
+	static boolean solveBackjumping(int[][] vals, SolveBudget budget) {
+		BackjumpSolver solver = new BackjumpSolver(Geometry.forSize(vals.length));
+		solver.stats.watch(budget);
+		boolean solved = solver.solve(vals);
+		LAST_STATS.set(solver.stats);
+		return solved;
+	}
+
+	/**
+	 * Solves vals in place with the clause learning SAT solver.
+	 */
+	public static boolean solveSat(int[][] vals) {
+		return solveSat(vals, null);
+	}
+
+	static boolean solveSat(int[][] vals, SolveBudget budget) {
+		SatEncoding encoding = new SatEncoding(Geometry.forSize(vals.length));
+		encoding.budget = budget;
+		boolean solved = encoding.solve(vals);
+		LAST_STATS.set(encoding.stats);
+		return solved;
+	}
 
-		// check row
-		for (int j = 0; j < vals.length; j++) {
-			if (vals[temp.row][j] == val) {
-				return false;
+	/**
+	 * Solves vals in place without recursion, see IterativeSolver.
+	 */
+	public static boolean solveIterative(int[][] vals) {
+		return solveIterative(vals, null);
+	}
+
+	static boolean solveIterative(int[][] vals, SolveBudget budget) {
+		IterativeSolver solver = new IterativeSolver(Geometry.forSize(vals.length));
+		solver.stats.watch(budget);
+		boolean solved = solver.solve(vals);
+		LAST_STATS.set(solver.stats);
+		return solved;
+	}
+
+	/**
+	 * Solves vals in place with the first finisher of a portfolio of solver
+	 * configurations, see PortfolioSolver. Interrupting the calling thread
+	 * cancels the solve, which solveWithin reports as CANCELLED.
+	 */
+	public static boolean solvePortfolio(int[][] vals) {
+		return solvePortfolio(vals, null);
+	}
+
+	static boolean solvePortfolio(int[][] vals, SolveBudget budget) {
+		PortfolioSolver solver = new PortfolioSolver(PortfolioSolver.sharedPool(), PortfolioSolver.DEFAULT_CONFIGS);
+		boolean solved = solver.solve(vals, budget);
+		LAST_STATS.set(solver.stats);
+		return solved;
+	}
+
+	/**
+	 * Solves vals in place with the generic constraint solver.
+	 */
+	public static boolean solveCsp(int[][] vals) {
+		return solveCsp(vals, null);
+	}
+
+	static boolean solveCsp(int[][] vals, SolveBudget budget) {
+		Geometry geometry = Geometry.forSize(vals.length);
+		Solver[] solvers = CSP_SOLVERS.get();
+		Solver solver = solvers[geometry.size];
+		if (solver == null) {
+			solver = new Solver(cspModel(geometry));
+			solvers[geometry.size] = solver;
+		} else {
+			solver.reset();
+		}
+		final SolverStats stats = new SolverStats();
+		stats.watch(budget);
+		stats.reset();
+		solver.setMonitor(new Monitor() {
+			public void node(int depth) {
+				stats.node(depth);
+			}
+		});
+		boolean solved = true;
+		for (int cell = 0; cell < geometry.cells && solved; cell++) {
+			int value = vals[geometry.rowOf[cell]][geometry.colOf[cell]];
+			solved = value == 0 || solver.assign(cell, value);
+		}
+		solved = solved && solver.solve();
+		stats.backtracks = solver.getBacktracks();
+		stats.propagations = solver.getRevisions();
+		stats.finish(solved);
+		LAST_STATS.set(stats);
+		if (solved) {
+			for (int cell = 0; cell < geometry.cells; cell++) {
+				vals[geometry.rowOf[cell]][geometry.colOf[cell]] = solver.value(cell);
 			}
 		}
+		return solved;
+	}
 
-		// check box
-		int boxJ = temp.col - temp.col % 3; // 7 -2 = 6
-		int boxI = temp.row - temp.row % 3; // 0
-		for (int i = boxI; i < boxI + 3; i++) {
-			for (int j = boxJ; j < boxJ + 3; j++) {
-				if (vals[i][j] == val) {
-					return false;
+	private static Problem cspModel(Geometry geometry) {
+		synchronized (cspModels) {
+			Problem problem = cspModels[geometry.size];
+			if (problem == null) {
+				problem = new Problem();
+				for (int cell = 0; cell < geometry.cells; cell++) {
+					problem.addVariable(geometry.fullMask);
+				}
+				for (int[] unit : geometry.units) {
+					problem.addAllDifferent(unit);
 				}
+				cspModels[geometry.size] = problem;
 			}
+			return problem;
 		}
-
-		return true;
 	}
 
-}
-
-class Variable {
-	int value;
-	int row;
-	int col;
+	/**
+	 * Solves vals in place, searching subtrees on all available cores.
+	 */
+	public static boolean solveParallel(int[][] vals) {
+		return solveParallel(vals, null);
+	}
 
-	Variable(int row, int col) {
-		this.row = row;
-		this.col = col;
-		this.value = 1;
+	static boolean solveParallel(int[][] vals, SolveBudget budget) {
+		ParallelSolver solver = new ParallelSolver(ForkJoinPool.commonPool(), 8);
+		solver.budget = budget;
+		boolean solved = solver.solve(vals);
+		LAST_STATS.set(solver.stats);
+		return solved;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,211 @@
+package sudoku;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Benchmarks every solving strategy over the puzzle corpus: each bundled
+ * sudoku*.txt file (solutions excluded) and every generated*.txt corpus
+ * written by Generator. For each (corpus, strategy) pair it runs timed
+ * warmup and measurement iterations and reports throughput (ops/s),
+ * average time (us/op) and allocated bytes per op, the equivalent of JMH's
+ * gc.alloc.rate.norm (NaN for strategies that search on other threads).
+ * Results are written as CSV in the column layout of JMH's -rf csv output,
+ * so existing tooling can track them across releases.
+ * 
+ * Usage: SudokuBenchmark [-s STRATEGY,...] [-f file,...] [-wi n] [-i n]
+ * [-t seconds] [-o results.csv]
+ */
+public class SudokuBenchmark {
+
+	// STATIC, MRV and ITERATIVE are only run on 9x9 corpora unless asked for by name;
+	// on the bigger bundled boards they take minutes to hours per solve
+	private static final int NAIVE_MAX_SIZE = 9;
+
+	private static volatile boolean sink;
+
+	public static void main(String[] args) throws IOException {
+		List<Sudoku.Strategy> strategies = new ArrayList<Sudoku.Strategy>(Arrays.asList(Sudoku.Strategy.values()));
+		List<String> files = null;
+		boolean explicitStrategies = false;
+		int warmups = 3;
+		int iterations = 5;
+		double seconds = 1;
+		String output = "benchmark.csv";
+		for (int a = 0; a + 1 < args.length; a += 2) {
+			String value = args[a + 1];
+			if (args[a].equals("-s")) {
+				strategies.clear();
+				for (String name : value.split(",")) {
+					strategies.add(Sudoku.Strategy.valueOf(name.toUpperCase()));
+				}
+				explicitStrategies = true;
+			} else if (args[a].equals("-f")) {
+				files = Arrays.asList(value.split(","));
+			} else if (args[a].equals("-wi")) {
+				warmups = Integer.parseInt(value);
+			} else if (args[a].equals("-i")) {
+				iterations = Integer.parseInt(value);
+			} else if (args[a].equals("-t")) {
+				seconds = Double.parseDouble(value);
+			} else if (args[a].equals("-o")) {
+				output = value;
+			} else {
+				throw new IllegalArgumentException("Unknown option " + args[a]);
+			}
+		}
+		if (files == null) {
+			files = corpus(new File("."));
+		}
+
+		PrintWriter csv = new PrintWriter(new OutputStreamWriter(new FileOutputStream(output), "UTF-8"));
+		csv.println("\"Benchmark\",\"Mode\",\"Threads\",\"Samples\",\"Score\",\"Score Error (99.9%)\",\"Unit\","
+				+ "\"Param: corpus\",\"Param: strategy\"");
+		for (String file : files) {
+			List<int[][]> puzzles = load(file);
+			if (puzzles.isEmpty()) {
+				continue;
+			}
+			int size = puzzles.get(0).length;
+			for (Sudoku.Strategy strategy : strategies) {
+				if (!explicitStrategies && size > NAIVE_MAX_SIZE
+						&& (strategy == Sudoku.Strategy.STATIC || strategy == Sudoku.Strategy.MRV
+								|| strategy == Sudoku.Strategy.ITERATIVE)) {
+					continue;
+				}
+				Result result = run(puzzles, strategy, warmups, iterations, (long) (seconds * 1e9));
+				String params = ",\"" + file + "\",\"" + strategy + "\"";
+				csv.println(row("sudoku.SudokuBenchmark.solve", "thrpt", result.throughput, "ops/s") + params);
+				csv.println(row("sudoku.SudokuBenchmark.solve", "avgt", result.averageTime, "us/op") + params);
+				csv.println(row("sudoku.SudokuBenchmark.solve:\u00b7gc.alloc.rate.norm", "avgt", result.allocated,
+						"B/op") + params);
+				csv.flush();
+				System.out.printf("%-28s %-10s %12.1f ops/s %12.2f us/op %14.0f B/op%n", file, strategy,
+						mean(result.throughput), mean(result.averageTime), mean(result.allocated));
+			}
+		}
+		csv.close();
+		System.out.println("Results written to " + output);
+	}
+
+	// Per-iteration samples of one (corpus, strategy) run
+	private static final class Result {
+		final double[] throughput;
+		final double[] averageTime;
+		final double[] allocated;
+
+		Result(int iterations) {
+			throughput = new double[iterations];
+			averageTime = new double[iterations];
+			allocated = new double[iterations];
+		}
+	}
+
+	private static Result run(List<int[][]> puzzles, Sudoku.Strategy strategy, int warmups, int iterations,
+			long iterationNanos) {
+		int size = puzzles.get(0).length;
+		int[][] vals = new int[size][size];
+		Result result = new Result(iterations);
+		// Only the calling thread's allocations can be measured, so the pool
+		// threads' share would be missing; reported as NaN instead
+		boolean threaded = strategy == Sudoku.Strategy.PARALLEL || strategy == Sudoku.Strategy.PORTFOLIO;
+		for (int it = -warmups; it < iterations; it++) {
+			long ops = 0;
+			long allocatedBefore = allocatedBytes();
+			long start = System.nanoTime();
+			long elapsed;
+			do {
+				for (int[][] puzzle : puzzles) {
+					for (int i = 0; i < size; i++) {
+						System.arraycopy(puzzle[i], 0, vals[i], 0, size);
+					}
+					sink ^= Sudoku.solve(vals, strategy);
+					ops++;
+				}
+				elapsed = System.nanoTime() - start;
+			} while (elapsed < iterationNanos);
+			long allocated = threaded ? -1 : allocatedBytes() - allocatedBefore;
+			if (it >= 0) {
+				result.throughput[it] = ops / (elapsed / 1e9);
+				result.averageTime[it] = elapsed / 1e3 / ops;
+				result.allocated[it] = allocated < 0 ? Double.NaN : (double) allocated / ops;
+			}
+		}
+		return result;
+	}
+
+	private static String row(String benchmark, String mode, double[] samples, String unit) {
+		double mean = mean(samples);
+		double variance = 0;
+		for (double sample : samples) {
+			variance += (sample - mean) * (sample - mean);
+		}
+		// normal approximation of the 99.9% confidence interval
+		double error = samples.length > 1 ? 3.29 * Math.sqrt(variance / (samples.length - 1) / samples.length)
+				: Double.NaN;
+		return String.format("\"%s\",\"%s\",1,%d,%f,%f,\"%s\"", benchmark, mode, samples.length, mean, error, unit);
+	}
+
+	private static double mean(double[] samples) {
+		double sum = 0;
+		for (double sample : samples) {
+			sum += sample;
+		}
+		return sum / samples.length;
+	}
+
+	// Bytes allocated by the current thread so far, or -1 if the JVM can't tell
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	static List<String> corpus(File directory) {
+		List<String> files = new ArrayList<String>();
+		String[] names = directory.list();
+		if (names == null) {
+			return files;
+		}
+		Arrays.sort(names);
+		for (String name : names) {
+			if (name.endsWith(".txt") && !name.endsWith("Solution.txt")
+					&& (name.startsWith("sudoku") || name.startsWith("generated"))) {
+				files.add(name);
+			}
+		}
+		return files;
+	}
+
+	static List<int[][]> load(String file) throws IOException {
+		List<int[][]> puzzles = new ArrayList<int[][]>();
+		PuzzleReader reader = new PuzzleReader(new FileInputStream(file));
+		try {
+			int[] cells;
+			while ((cells = reader.read(null)) != null) {
+				if (reader.count != cells.length) {
+					throw new RuntimeException("Incorrect number of inputs.");
+				}
+				int[][] puzzle = new int[reader.size][reader.size];
+				for (int i = 0; i < reader.size; i++) {
+					System.arraycopy(cells, i * reader.size, puzzle[i], 0, reader.size);
+				}
+				puzzles.add(puzzle);
+			}
+		} finally {
+			reader.close();
+		}
+		return puzzles;
+	}
+
+}
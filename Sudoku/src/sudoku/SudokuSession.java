@@ -0,0 +1,231 @@
+package sudoku;
+
+/**
+ * A board being filled in interactively. Placing or clearing a digit updates
+ * the row, column and box masks in place, so candidates and forced moves
+ * come straight from the current state without re-solving.
+ * 
+ * Solvability is answered from a witness solution: while every placed digit
+ * agrees with it, the board is still solvable and no search runs. The
+ * session counts the placed digits that disagree, so undoing a wrong move
+ * brings the witness back; only while that count is non-zero does
+ * isSolvable search, on a propagation board reused across calls.
+ */
+public final class SudokuSession {
+
+	/**
+	 * A digit for a cell, with rows and columns counted from 0.
+	 */
+	public static final class Move {
+		public final int row;
+		public final int col;
+		public final int digit;
+
+		Move(int row, int col, int digit) {
+			this.row = row;
+			this.col = col;
+			this.digit = digit;
+		}
+
+		@Override
+		public String toString() {
+			return "(" + row + ", " + col + ") = " + digit;
+		}
+	}
+
+	private final Geometry geometry;
+	private final int[] values;
+	private final boolean[] given;
+	private final long[] rowMasks;
+	private final long[] colMasks;
+	private final long[] boxMasks;
+
+	// Last solution found, and how many placed digits differ from it
+	private final int[] witness;
+	private boolean hasWitness;
+	private int disagreements;
+	private boolean knownUnsolvable;
+
+	private final Propagator board;
+
+	/**
+	 * Starts a session on the puzzle vals, whose non-zero cells become givens
+	 * that cannot be changed. Throws IllegalArgumentException if the givens
+	 * conflict.
+	 */
+	public SudokuSession(int[][] vals) {
+		geometry = Geometry.forSize(vals.length);
+		values = new int[geometry.cells];
+		given = new boolean[geometry.cells];
+		rowMasks = new long[geometry.size];
+		colMasks = new long[geometry.size];
+		boxMasks = new long[geometry.size];
+		witness = new int[geometry.cells];
+		board = new Propagator(geometry);
+		for (int cell = 0; cell < geometry.cells; cell++) {
+			int digit = vals[geometry.rowOf[cell]][geometry.colOf[cell]];
+			if (digit == 0) {
+				continue;
+			}
+			if ((candidates(cell) & (1L << digit)) == 0) {
+				throw new IllegalArgumentException("Conflicting given at " + geometry.rowOf[cell] + ", "
+						+ geometry.colOf[cell]);
+			}
+			set(cell, digit);
+			given[cell] = true;
+		}
+	}
+
+	/**
+	 * Puts digit in an empty or user-filled cell. Returns false, leaving the
+	 * board unchanged, if the cell is a given or a peer already holds digit.
+	 */
+	public boolean place(int row, int col, int digit) {
+		int cell = geometry.cell(row, col);
+		if (given[cell] || digit < 1 || digit > geometry.size) {
+			return false;
+		}
+		int previous = values[cell];
+		if (previous != 0) {
+			unset(cell);
+		}
+		if ((candidates(cell) & (1L << digit)) == 0) {
+			if (previous != 0) {
+				set(cell, previous);
+			}
+			return false;
+		}
+		if (previous != 0) {
+			knownUnsolvable = false;
+		}
+		set(cell, digit);
+		return true;
+	}
+
+	/**
+	 * Empties a user-filled cell. Returns false for a given.
+	 */
+	public boolean clear(int row, int col) {
+		int cell = geometry.cell(row, col);
+		if (given[cell]) {
+			return false;
+		}
+		if (values[cell] != 0) {
+			unset(cell);
+			// The removed digit may have been what made the board unsolvable
+			knownUnsolvable = false;
+		}
+		return true;
+	}
+
+	public int get(int row, int col) {
+		return values[geometry.cell(row, col)];
+	}
+
+	/**
+	 * Digits still allowed in an empty cell, bit d set for digit d.
+	 */
+	public long candidates(int row, int col) {
+		int cell = geometry.cell(row, col);
+		return values[cell] != 0 ? 0 : candidates(cell);
+	}
+
+	/**
+	 * Whether the current board can still be completed.
+	 */
+	public boolean isSolvable() {
+		if (hasWitness && disagreements == 0) {
+			return true;
+		}
+		if (knownUnsolvable) {
+			return false;
+		}
+		if (board.load(values) && board.solve()) {
+			System.arraycopy(board.values, 0, witness, 0, witness.length);
+			hasWitness = true;
+			disagreements = 0;
+			return true;
+		}
+		knownUnsolvable = true;
+		return false;
+	}
+
+	/**
+	 * A move forced by the current board, an empty cell with one candidate
+	 * (naked single) or a digit with one place left in a row, column or box
+	 * (hidden single). Returns null when there is none, including when some
+	 * cell or unit has no place left at all.
+	 */
+	public Move nextForcedMove() {
+		for (int cell = 0; cell < geometry.cells; cell++) {
+			if (values[cell] == 0) {
+				long candidates = candidates(cell);
+				if (candidates == 0) {
+					return null;
+				}
+				if (Long.bitCount(candidates) == 1) {
+					return move(cell, Long.numberOfTrailingZeros(candidates));
+				}
+			}
+		}
+		for (int[] unit : geometry.units) {
+			long once = 0;
+			long twice = 0;
+			long placed = 0;
+			for (int cell : unit) {
+				if (values[cell] != 0) {
+					placed |= 1L << values[cell];
+					continue;
+				}
+				long candidates = candidates(cell);
+				twice |= once & candidates;
+				once |= candidates;
+			}
+			if ((once | placed) != geometry.fullMask) {
+				return null;
+			}
+			long single = once & ~twice;
+			if (single != 0) {
+				int digit = Long.numberOfTrailingZeros(single);
+				for (int cell : unit) {
+					if (values[cell] == 0 && (candidates(cell) & (1L << digit)) != 0) {
+						return move(cell, digit);
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	private Move move(int cell, int digit) {
+		return new Move(geometry.rowOf[cell], geometry.colOf[cell], digit);
+	}
+
+	private long candidates(int cell) {
+		return geometry.fullMask & ~(rowMasks[geometry.rowOf[cell]] | colMasks[geometry.colOf[cell]]
+				| boxMasks[geometry.boxOf[cell]]);
+	}
+
+	private void set(int cell, int digit) {
+		long bit = 1L << digit;
+		values[cell] = digit;
+		if (digit != witness[cell]) {
+			disagreements++;
+		}
+		rowMasks[geometry.rowOf[cell]] |= bit;
+		colMasks[geometry.colOf[cell]] |= bit;
+		boxMasks[geometry.boxOf[cell]] |= bit;
+	}
+
+	private void unset(int cell) {
+		long bit = ~(1L << values[cell]);
+		if (values[cell] != witness[cell]) {
+			disagreements--;
+		}
+		values[cell] = 0;
+		rowMasks[geometry.rowOf[cell]] &= bit;
+		colMasks[geometry.colOf[cell]] &= bit;
+		boxMasks[geometry.boxOf[cell]] &= bit;
+	}
+
+}
@@ -0,0 +1,95 @@
+package sudoku;
+
+import java.util.Arrays;
+
+/**
+ * Bucket priority queue over unassigned cells for MRV ordering. The key is
+ * the number of remaining candidates, ties broken towards the cell with the
+ * most unassigned peers (degree). Buckets are intrusive doubly linked lists
+ * over int arrays, so add/remove/update are O(1) and no objects are created
+ * during search.
+ */
+final class VariableQueue {
+
+	private final int maxDegree;
+	private final int[] head;
+	private final int[] next;
+	private final int[] prev;
+	private final int[] keyOf;
+	private int minKey;
+	private int count;
+
+	VariableQueue(int cells, int maxCandidates, int maxDegree) {
+		this.maxDegree = maxDegree;
+		head = new int[(maxCandidates + 1) * (maxDegree + 1)];
+		next = new int[cells];
+		prev = new int[cells];
+		keyOf = new int[cells];
+		Arrays.fill(head, -1);
+		Arrays.fill(keyOf, -1);
+		minKey = head.length;
+	}
+
+	boolean isEmpty() {
+		return count == 0;
+	}
+
+	int size() {
+		return count;
+	}
+
+	boolean contains(int cell) {
+		return keyOf[cell] >= 0;
+	}
+
+	void add(int cell, int candidates, int degree) {
+		int key = candidates * (maxDegree + 1) + (maxDegree - degree);
+		keyOf[cell] = key;
+		prev[cell] = -1;
+		next[cell] = head[key];
+		if (head[key] >= 0) {
+			prev[head[key]] = cell;
+		}
+		head[key] = cell;
+		if (key < minKey) {
+			minKey = key;
+		}
+		count++;
+	}
+
+	void remove(int cell) {
+		int key = keyOf[cell];
+		if (prev[cell] >= 0) {
+			next[prev[cell]] = next[cell];
+		} else {
+			head[key] = next[cell];
+		}
+		if (next[cell] >= 0) {
+			prev[next[cell]] = prev[cell];
+		}
+		keyOf[cell] = -1;
+		count--;
+	}
+
+	void update(int cell, int candidates, int degree) {
+		remove(cell);
+		add(cell, candidates, degree);
+	}
+
+	/**
+	 * Removes and returns the cell with the fewest candidates (highest degree
+	 * on ties), or -1 if the queue is empty.
+	 */
+	int poll() {
+		if (count == 0) {
+			return -1;
+		}
+		while (head[minKey] < 0) {
+			minKey++;
+		}
+		int cell = head[minKey];
+		remove(cell);
+		return cell;
+	}
+
+}